@@ -6,12 +6,18 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
 import com.cauchymop.goblob.R;
+import com.cauchymop.goblob.model.AiEngine;
 import com.cauchymop.goblob.model.AvatarManager;
+import com.cauchymop.goblob.model.GameDatas;
+import com.cauchymop.goblob.model.GameStore;
 import com.cauchymop.goblob.model.GoogleApiClientManager;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.games.Player;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.io.File;
 import java.util.UUID;
+import java.util.concurrent.Executors;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -28,6 +34,7 @@ import static com.google.android.gms.games.Games.Players;
 public class GoApplicationModule {
 
   private static final String LOCAL_UNIQUE_ID = "LOCAL_UNIQUE_ID";
+  private static final String GAME_STORE_FILE = "games.log";
   private Application application;
 
   public GoApplicationModule(Application application) {
@@ -82,4 +89,18 @@ public class GoApplicationModule {
   public SharedPreferences getSharedPreferences(Context context) {
     return PreferenceManager.getDefaultSharedPreferences(context);
   }
+
+  @Provides
+  @Singleton
+  public GameStore provideGameStore(Context context) {
+    return new GameStore(new File(context.getFilesDir(), GAME_STORE_FILE));
+  }
+
+  @Provides
+  @Singleton
+  public AiEngine provideAiEngine(GameDatas gameDatas) {
+    // One thread per match searching at the same time, each search using its own threads.
+    return new AiEngine(gameDatas, Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder().setNameFormat("ai-engine-%d").setDaemon(true).build()));
+  }
 }
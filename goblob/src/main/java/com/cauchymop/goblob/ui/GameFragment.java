@@ -1,9 +1,13 @@
 package com.cauchymop.goblob.ui;
 
+import android.app.ActivityManager;
+import android.content.Context;
 import android.media.Ringtone;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -17,11 +21,27 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.cauchymop.goblob.R;
+import com.cauchymop.goblob.model.AiEngine;
 import com.cauchymop.goblob.model.AvatarManager;
+import com.cauchymop.goblob.model.BitBoard;
 import com.cauchymop.goblob.model.GameDatas;
 import com.cauchymop.goblob.model.GoGameController;
-import com.cauchymop.goblob.model.MonteCarlo;
+import com.cauchymop.goblob.model.NodeArena;
+import com.cauchymop.goblob.model.Ponderer;
+import com.cauchymop.goblob.model.SearchBudget;
+import com.cauchymop.goblob.model.SearchConfig;
+import com.cauchymop.goblob.model.SearchListener;
+import com.cauchymop.goblob.model.SearchResult;
+import com.cauchymop.goblob.model.SearchSession;
 import com.cauchymop.goblob.proto.PlayGameData;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
 
 import javax.inject.Inject;
 
@@ -41,14 +61,31 @@ public class GameFragment extends GoBlobBaseFragment implements GoBoardView.List
 
   private static final String TAG = GameFragment.class.getName();
   private static final String EXTRA_GO_GAME = "GO_GAME";
+  private static final long MONTE_CARLO_TIME_MILLIS = 2000;
+  // Bound of the capacity of the Monte-Carlo trees, about 17MB for the two arenas of the session.
+  private static final int MONTE_CARLO_MAX_NODES = 1 << 18;
+  // The trees take at most this fraction of the heap of the app.
+  private static final int MONTE_CARLO_HEAP_FRACTION = 8;
+  private static final long MONTE_CARLO_PONDERING_MILLIS = 30000;
 
   private GoGameController goGameController;
   private GoBoardView goBoardView;
+  private Ponderer ponderer;
+  private ListenableFuture<Move> monteCarloMove;
+  private final Executor mainThreadExecutor = new Executor() {
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(Runnable command) {
+      mainHandler.post(command);
+    }
+  };
 
   @Inject
   GameRepository gameRepository;
   @Inject GameDatas gameDatas;
   @Inject AvatarManager avatarManager;
+  @Inject AiEngine aiEngine;
 
   @BindView(R.id.boardViewContainer) FrameLayout boardViewContainer;
   @BindView(R.id.action_button) Button actionButton;
@@ -100,6 +137,21 @@ public class GameFragment extends GoBlobBaseFragment implements GoBoardView.List
     Log.d(TAG, "onDestroyView");
     cleanBoardView();
     unbinder.unbind();
+    releaseMonteCarlo();
+  }
+
+  /**
+   * Cancels the Monte-Carlo move and drops the trees of the search session.
+   */
+  private void releaseMonteCarlo() {
+    if (monteCarloMove != null) {
+      monteCarloMove.cancel(false);
+    }
+    if (ponderer != null) {
+      ponderer.shutdown();
+      goGameController.registerListener(null);
+      ponderer = null;
+    }
   }
 
   @Override
@@ -196,11 +248,46 @@ public class GameFragment extends GoBlobBaseFragment implements GoBoardView.List
   }
 
   private void play(Move move) {
+    boolean inGame = goGameController.getPhase() == PlayGameData.GameData.Phase.IN_GAME;
     boolean played = goGameController.playMoveOrToggleDeadStone(move);
-    if(played) {
+    if (!played) {
+      buzz();
+    } else if (inGame
+        && goGameController.getPhase() == PlayGameData.GameData.Phase.DEAD_STONE_MARKING) {
+      suggestDeadStonesAndEndTurn();
+    } else {
+      endTurn();
+    }
+  }
+
+  /**
+   * Ends the turn once the dead stones suggested for the finished game are marked, the
+   * suggestion being computed off the UI thread.
+   */
+  private void suggestDeadStonesAndEndTurn() {
+    enableInteractions(false);
+    Futures.addCallback(aiEngine.suggestDeadStones(goGameController.getGame()),
+        new FutureCallback<BitBoard>() {
+          @Override
+          public void onSuccess(BitBoard deadStones) {
+            goGameController.setSuggestedDeadStones(deadStones);
+            endTurnOnceSuggested();
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            Log.e(TAG, "Dead stone suggestion failed", t);
+            endTurnOnceSuggested();
+          }
+        }, mainThreadExecutor);
+  }
+
+  private void endTurnOnceSuggested() {
+    if (isAdded()) {
       endTurn();
     } else {
-      buzz();
+      // The fragment is gone, but the move that ended the game must still be committed.
+      gameRepository.commitGameChanges(goGameController.buildGameData());
     }
   }
 
@@ -287,11 +374,72 @@ public class GameFragment extends GoBlobBaseFragment implements GoBoardView.List
     }
   }
 
+  /**
+   * Returns the capacity of the Monte-Carlo trees, sized from the memory class of the device.
+   * With a 32MB heap, both arenas take 4MB for 63k nodes.
+   */
+  private int getMonteCarloCapacity() {
+    ActivityManager activityManager =
+        (ActivityManager) getActivity().getSystemService(Context.ACTIVITY_SERVICE);
+    long heapBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+    long maxNodes = heapBytes / MONTE_CARLO_HEAP_FRACTION / (2 * NodeArena.BYTES_PER_NODE);
+    return (int) Math.min(maxNodes, MONTE_CARLO_MAX_NODES);
+  }
+
   private void playMonteCarloMove() {
-    int bestMove = MonteCarlo.getBestMove(goGameController.getGame(), 1000);
-    int boardSize = goGameController.getGameConfiguration().getBoardSize();
-    int x = bestMove % boardSize;
-    int y = bestMove / boardSize;
-    goGameController.playMoveOrToggleDeadStone(gameDatas.createMove(x, y));
+    if (ponderer == null) {
+      // The searchers run below the priority of the UI thread, while pondering as well as for
+      // the moves of the engine.
+      SearchSession searchSession = new SearchSession(getMonteCarloCapacity(),
+          SearchConfig.newBuilder()
+              .setThreadCount(Runtime.getRuntime().availableProcessors())
+              .setKomi(goGameController.getGameConfiguration().getKomi())
+              .build(),
+          new ThreadFactoryBuilder()
+              .setNameFormat("monte-carlo-%d")
+              .setDaemon(true)
+              .setPriority(Thread.MIN_PRIORITY)
+              .build());
+      // The engine plays the color to move, and ponders while the other player thinks.
+      ponderer = new Ponderer(searchSession, goGameController.getCurrentColor(),
+          SearchBudget.ofTime(MONTE_CARLO_PONDERING_MILLIS));
+      goGameController.registerListener(ponderer);
+    }
+    // The engine search waits off the UI thread for the cancelled pondering to end.
+    ponderer.cancelPondering();
+    // The move is only played if the game is still the one searched.
+    final List<Integer> searchedMoves = goGameController.getGame().getMoveHistory();
+    monteCarloMove = aiEngine.playMove(goGameController.getGame(), ponderer.getSession(),
+        SearchBudget.ofTime(MONTE_CARLO_TIME_MILLIS), new SearchListener() {
+          @Override
+          public void onProgress(SearchResult progress) {
+            Log.v(TAG, "Monte-Carlo " + progress);
+          }
+
+          @Override
+          public void onSearchEnd(SearchResult result) {
+            Log.d(TAG, "Monte-Carlo " + result + " " + result.getStats());
+          }
+        });
+    Futures.addCallback(monteCarloMove, new FutureCallback<Move>() {
+      @Override
+      public void onSuccess(Move move) {
+        monteCarloMove = null;
+        Log.d(TAG, "Monte-Carlo move: " + move);
+        if (!goGameController.getGame().getMoveHistory().equals(searchedMoves)) {
+          Log.d(TAG, "Monte-Carlo move dropped: the game changed during the search");
+          return;
+        }
+        goGameController.playMoveOrToggleDeadStone(move);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        monteCarloMove = null;
+        if (!(t instanceof CancellationException)) {
+          Log.e(TAG, "Monte-Carlo search failed", t);
+        }
+      }
+    }, mainThreadExecutor);
   }
 }
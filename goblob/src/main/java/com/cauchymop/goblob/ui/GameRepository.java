@@ -12,6 +12,7 @@ import android.util.Log;
 
 import com.cauchymop.goblob.model.AvatarManager;
 import com.cauchymop.goblob.model.GameDatas;
+import com.cauchymop.goblob.model.GameStore;
 import com.cauchymop.goblob.proto.PlayGameData;
 import com.cauchymop.goblob.proto.PlayGameData.GameData;
 import com.cauchymop.goblob.proto.PlayGameData.GameData.Phase;
@@ -38,14 +39,18 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.TextFormat;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -57,6 +62,10 @@ import static com.google.android.gms.games.Games.TurnBasedMultiplayer;
 
 /**
  * Class to persist games.
+ * <p>
+ * The games are saved one by one in a {@link GameStore} as they change, on a background thread
+ * which writes the changes in order. The game list formerly saved as text in the preferences is
+ * moved to the store on the first start.
  */
 @Singleton
 public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
@@ -73,6 +82,10 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
 
 
   private final SharedPreferences prefs;
+  private final GameStore gameStore;
+  private final ExecutorService storeExecutor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("game-store").setDaemon(true).build());
+  private boolean storeLoaded;
   private final GameDatas gameDatas;
   private final GoogleApiClient googleApiClient;
   private final Lazy<String> playerOneDefaultName;
@@ -97,12 +110,13 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
 
 
   @Inject
-  public GameRepository(SharedPreferences prefs, GameDatas gameDatas,
+  public GameRepository(SharedPreferences prefs, GameStore gameStore, GameDatas gameDatas,
       GoogleApiClient googleApiClient, AvatarManager avatarManager,
       @Named("PlayerOneDefaultName") Lazy<String> playerOneDefaultName,
       @Named("PlayerTwoDefaultName") String playerTwoDefaultName,
       @Named("LocalUniqueId") String localUniqueId) {
     this.prefs = prefs;
+    this.gameStore = gameStore;
     this.gameDatas = gameDatas;
     this.googleApiClient = googleApiClient;
     this.avatarManager = avatarManager;
@@ -141,6 +155,7 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
     Log.d(TAG, " -> existingGame found = " + (existingGame != null));
     if (existingGame == null || gameData.getSequenceNumber() > existingGame.getSequenceNumber()) {
       gameCache.getMutableGames().put(gameData.getMatchId(), gameData);
+      storeGame(gameData);
       postCacheRefresh();
       fireGameChanged(gameData);
     } else {
@@ -148,10 +163,51 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
     }
   }
 
-  private void persistCache() {
-    SharedPreferences.Editor editor = prefs.edit();
-    editor.putString(GAMES, TextFormat.printToString(gameCache));
-    editor.apply();
+  private void storeGame(final GameData gameData) {
+    executeOnStore("Error storing GameData: ", new StoreTask() {
+      @Override
+      public void run() throws IOException {
+        gameStore.putGame(gameData);
+      }
+    });
+  }
+
+  private void removeStoredGame(final String matchId) {
+    executeOnStore("Error removing GameData: ", new StoreTask() {
+      @Override
+      public void run() throws IOException {
+        gameStore.removeGame(matchId);
+      }
+    });
+  }
+
+  private void storeUnpublished(final String matchId, final boolean unpublished) {
+    executeOnStore("Error storing unpublished match: ", new StoreTask() {
+      @Override
+      public void run() throws IOException {
+        gameStore.setUnpublished(matchId, unpublished);
+      }
+    });
+  }
+
+  /**
+   * Runs the task on the store thread, after the tasks already submitted. Nothing is written if
+   * the store couldn't be loaded, so that its file is left as is.
+   */
+  private void executeOnStore(final String errorMessage, final StoreTask task) {
+    if (!storeLoaded) {
+      return;
+    }
+    storeExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          task.run();
+        } catch (IOException e) {
+          Log.e(TAG, errorMessage + e.getMessage());
+        }
+      }
+    });
   }
 
   public void publishUnpublishedGames() {
@@ -160,6 +216,7 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
       // The match can be absent if the user changed.
       if (gameData != null && publishRemoteGameState(gameData)) {
         gameCache.removeUnpublished(gameData.getMatchId());
+        storeUnpublished(gameData.getMatchId(), false);
       }
     }
   }
@@ -178,6 +235,7 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
       return true;
     } else {
       gameCache.putUnpublished(gameData.getMatchId(), IGNORED_VALUE);
+      storeUnpublished(gameData.getMatchId(), true);
       return false;
     }
   }
@@ -201,17 +259,64 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
 
   private GameList.Builder loadGameList() {
     Log.i(TAG, "loadGameList");
-    String gameListString = prefs.getString(GAMES, "");
-    GameList.Builder gameListBuilder = GameList.newBuilder();
+    GameList.Builder gameListBuilder;
     try {
-      TextFormat.merge(gameListString, gameListBuilder);
-    } catch (TextFormat.ParseException e) {
-      Log.e(TAG, "Error parsing local GameList: " + e.getMessage());
+      gameListBuilder = gameStore.load();
+      storeLoaded = true;
+    } catch (IOException e) {
+      Log.e(TAG, "Error reading the GameStore: " + e.getMessage());
+      gameListBuilder = GameList.newBuilder();
     }
+    loadLegacyGameList(gameListBuilder);
     Log.i(TAG, "loadGameList: " + gameListBuilder.getGames().size() + " games loaded.");
     return gameListBuilder;
   }
 
+  private void loadLegacyGameList(GameList.Builder gameListBuilder) {
+    String gameListString = prefs.getString(GAMES, null);
+    if (gameListString == null) {
+      return;
+    }
+    Log.i(TAG, "loadLegacyGameList");
+    GameList.Builder legacyGameList = GameList.newBuilder();
+    try {
+      TextFormat.merge(gameListString, legacyGameList);
+    } catch (TextFormat.ParseException e) {
+      // The text is kept, so that its games are not lost.
+      Log.e(TAG, "Error parsing local GameList: " + e.getMessage());
+      return;
+    }
+    // The text may be older than the store, if it couldn't be removed after a migration.
+    final List<GameData> migratedGames = new ArrayList<>();
+    for (GameData gameData : legacyGameList.getGamesMap().values()) {
+      GameData storedGame = gameListBuilder.getGamesMap().get(gameData.getMatchId());
+      if (storedGame == null || gameData.getSequenceNumber() > storedGame.getSequenceNumber()) {
+        migratedGames.add(gameData);
+      }
+    }
+    final Set<String> unpublished = legacyGameList.getUnpublishedMap().keySet();
+    for (GameData gameData : migratedGames) {
+      gameListBuilder.putGames(gameData.getMatchId(), gameData);
+      if (unpublished.contains(gameData.getMatchId())) {
+        gameListBuilder.putUnpublished(gameData.getMatchId(), IGNORED_VALUE);
+      } else {
+        gameListBuilder.removeUnpublished(gameData.getMatchId());
+      }
+    }
+    // The text is only removed once the games are in the store.
+    executeOnStore("Error storing local GameList: ", new StoreTask() {
+      @Override
+      public void run() throws IOException {
+        for (GameData gameData : migratedGames) {
+          gameStore.putGame(gameData);
+          gameStore.setUnpublished(gameData.getMatchId(),
+              unpublished.contains(gameData.getMatchId()));
+        }
+        prefs.edit().remove(GAMES).apply();
+      }
+    });
+  }
+
   public void refreshRemoteGameListFromServer() {
     Log.d(TAG, "refreshRemoteGameListFromServer");
     final long requestId = System.currentTimeMillis();
@@ -252,13 +357,16 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
     matchListResult.setResultCallback(matchListResultCallBack);
   }
 
-  private boolean clearRemoteGamesIfAbsent(final Set<GameData> games) {
-    return Iterables.removeIf(gameCache.getMutableGames().values(), new Predicate<GameData>() {
-      @Override
-      public boolean apply(GameData gameData) {
-        return gameDatas.isRemoteGame(gameData) && !games.contains(gameData);
+  private boolean clearRemoteGamesIfAbsent(Set<GameData> games) {
+    boolean removed = false;
+    for (GameData gameData : ImmutableList.copyOf(gameCache.getGamesMap().values())) {
+      if (gameDatas.isRemoteGame(gameData) && !games.contains(gameData)) {
+        gameCache.removeGames(gameData.getMatchId());
+        removeStoredGame(gameData.getMatchId());
+        removed = true;
       }
-    });
+    }
+    return removed;
   }
 
   private void updateAvatars(TurnBasedMatch match) {
@@ -416,6 +524,7 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
   private void removeFromCache(String matchId) {
     Log.d(TAG, "removeFromCache " + matchId);
     gameCache.getMutableGames().remove(matchId);
+    removeStoredGame(matchId);
     postCacheRefresh();
   }
 
@@ -527,6 +636,10 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
     return localGame;
   }
 
+  private interface StoreTask {
+    void run() throws IOException;
+  }
+
   public interface GameRepositoryListener {
     void gameListChanged();
 
@@ -546,7 +659,6 @@ public class GameRepository implements OnTurnBasedMatchUpdateReceivedListener {
     @Override
     public void handleMessage(Message msg) {
       Log.d(TAG, "CacheRefreshHandler handleMessage");
-      gameRepository.persistCache();
       gameRepository.fireGameListChanged();
     }
   }
@@ -0,0 +1,94 @@
+package com.cauchymop.goblob.model;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Move;
+
+/**
+ * Searches the moves of the engine, and the dead stones of the finished games, in the background,
+ * so that the caller thread (typically the UI thread) is never blocked by a search.
+ * <p>
+ * Each search works on a snapshot of the game taken when it's requested, so the game can change
+ * while the engine thinks. A search waits for its {@link SearchSession} to be free, and holds it
+ * until it's over, so that a {@link Ponderer} doesn't search it at the same time. The searches of
+ * different sessions, like those of different matches, run concurrently as far as the executor
+ * allows.
+ */
+public class AiEngine {
+
+  private final GameDatas gameDatas;
+  private final ListeningExecutorService executor;
+
+  public AiEngine(GameDatas gameDatas, ExecutorService executor) {
+    this.gameDatas = gameDatas;
+    this.executor = MoreExecutors.listeningDecorator(executor);
+  }
+
+  /**
+   * Starts searching the move to play in the current position of {@code game}, within
+   * {@code budget}. The progress of the search is reported to {@code listener} unless it's null.
+   * <p>
+   * Cancelling the returned future stops the search as soon as possible.
+   */
+  public ListenableFuture<Move> playMove(GoGame game, final SearchSession session,
+      final SearchBudget budget, final SearchListener listener) {
+    final GoGame snapshot = game.copy();
+    final CancellationToken cancellationToken = new CancellationToken();
+    final ListenableFuture<Move> move = executor.submit(new Callable<Move>() {
+      @Override
+      public Move call() throws InterruptedException {
+        session.acquire();
+        try {
+          SearchResult result = session.search(snapshot, budget, cancellationToken, listener);
+          return toMove(snapshot, result.getMove());
+        } finally {
+          session.release();
+        }
+      }
+    });
+    move.addListener(new Runnable() {
+      @Override
+      public void run() {
+        if (move.isCancelled()) {
+          cancellationToken.cancel();
+        }
+      }
+    }, MoreExecutors.directExecutor());
+    return move;
+  }
+
+  /**
+   * Starts estimating the dead stones of the finished game: the stones owned by the opponent at
+   * the end of most random playouts. The playouts are seeded by the position to suggest the same
+   * stones on every device.
+   */
+  public ListenableFuture<BitBoard> suggestDeadStones(GoGame game) {
+    final GoGame snapshot = game.copy();
+    return executor.submit(new Callable<BitBoard>() {
+      @Override
+      public BitBoard call() {
+        OwnershipEstimator estimator =
+            new OwnershipEstimator(new Random(snapshot.getBoard().getZobristHash()));
+        estimator.estimate(snapshot, OwnershipEstimator.DEFAULT_PLAYOUTS);
+        return estimator.getDeadStones();
+      }
+    });
+  }
+
+  /**
+   * Converts the move found by a search, passing when the search found none.
+   */
+  private Move toMove(GoGame game, int move) {
+    if (move == game.getPassValue() || move == GoGame.NO_MOVE) {
+      return gameDatas.createPassMove();
+    }
+    int boardSize = game.getBoardSize();
+    return gameDatas.createMove(move % boardSize, move / boardSize);
+  }
+}
@@ -0,0 +1,267 @@
+package com.cauchymop.goblob.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Fixed size set of positions, stored as bits in an array of longs.
+ * <p>
+ * Unlike {@link java.util.BitSet}, the size never changes, so there is no bounds check, resizing
+ * or tracking of the words in use. Use {@link #forBoardSize(int)} to get an implementation with
+ * unrolled operations for the usual board sizes.
+ */
+public class BitBoard implements Serializable {
+
+  protected final long[] words;
+
+  private BitBoard(int wordCount) {
+    words = new long[wordCount];
+  }
+
+  /**
+   * Returns a new empty {@link BitBoard} able to store all the positions of a board.
+   */
+  public static BitBoard forBoardSize(int boardSize) {
+    int wordCount = getWordCount(boardSize * boardSize);
+    switch (wordCount) {
+      case 2:
+        return new BitBoard2();
+      case 3:
+        return new BitBoard3();
+      case 6:
+        return new BitBoard6();
+      default:
+        return new BitBoard(wordCount);
+    }
+  }
+
+  private static int getWordCount(int numberOfPositions) {
+    return (numberOfPositions + 63) >>> 6;
+  }
+
+  public boolean get(int index) {
+    return (words[index >>> 6] & (1L << index)) != 0;
+  }
+
+  public void set(int index) {
+    words[index >>> 6] |= 1L << index;
+  }
+
+  public void clear(int index) {
+    words[index >>> 6] &= ~(1L << index);
+  }
+
+  public void set(int index, boolean value) {
+    if (value) {
+      set(index);
+    } else {
+      clear(index);
+    }
+  }
+
+  /**
+   * Returns the index of the first set bit starting from {@code fromIndex}, or -1.
+   */
+  public int nextSetBit(int fromIndex) {
+    int wordIndex = fromIndex >>> 6;
+    if (wordIndex >= words.length) {
+      return -1;
+    }
+    long word = words[wordIndex] & (-1L << fromIndex);
+    while (word == 0) {
+      if (++wordIndex == words.length) {
+        return -1;
+      }
+      word = words[wordIndex];
+    }
+    return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+  }
+
+  public void clear() {
+    Arrays.fill(words, 0);
+  }
+
+  public void or(BitBoard other) {
+    for (int i = 0; i < words.length; i++) {
+      words[i] |= other.words[i];
+    }
+  }
+
+  public void and(BitBoard other) {
+    for (int i = 0; i < words.length; i++) {
+      words[i] &= other.words[i];
+    }
+  }
+
+  public boolean isEmpty() {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int cardinality() {
+    int count = 0;
+    for (long word : words) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    return object instanceof BitBoard && Arrays.equals(words, ((BitBoard) object).words);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buf = new StringBuilder("{");
+    for (int index = nextSetBit(0); index != -1; index = nextSetBit(index + 1)) {
+      buf.append(buf.length() > 1 ? ", " : "").append(index);
+    }
+    return buf.append('}').toString();
+  }
+
+  /**
+   * {@link BitBoard} for 9x9 boards.
+   */
+  private static class BitBoard2 extends BitBoard {
+
+    private BitBoard2() {
+      super(2);
+    }
+
+    @Override
+    public void clear() {
+      words[0] = 0;
+      words[1] = 0;
+    }
+
+    @Override
+    public void or(BitBoard other) {
+      long[] otherWords = other.words;
+      words[0] |= otherWords[0];
+      words[1] |= otherWords[1];
+    }
+
+    @Override
+    public void and(BitBoard other) {
+      long[] otherWords = other.words;
+      words[0] &= otherWords[0];
+      words[1] &= otherWords[1];
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return (words[0] | words[1]) == 0;
+    }
+
+    @Override
+    public int cardinality() {
+      return Long.bitCount(words[0]) + Long.bitCount(words[1]);
+    }
+  }
+
+  /**
+   * {@link BitBoard} for 13x13 boards.
+   */
+  private static class BitBoard3 extends BitBoard {
+
+    private BitBoard3() {
+      super(3);
+    }
+
+    @Override
+    public void clear() {
+      words[0] = 0;
+      words[1] = 0;
+      words[2] = 0;
+    }
+
+    @Override
+    public void or(BitBoard other) {
+      long[] otherWords = other.words;
+      words[0] |= otherWords[0];
+      words[1] |= otherWords[1];
+      words[2] |= otherWords[2];
+    }
+
+    @Override
+    public void and(BitBoard other) {
+      long[] otherWords = other.words;
+      words[0] &= otherWords[0];
+      words[1] &= otherWords[1];
+      words[2] &= otherWords[2];
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return (words[0] | words[1] | words[2]) == 0;
+    }
+
+    @Override
+    public int cardinality() {
+      return Long.bitCount(words[0]) + Long.bitCount(words[1]) + Long.bitCount(words[2]);
+    }
+  }
+
+  /**
+   * {@link BitBoard} for 19x19 boards.
+   */
+  private static class BitBoard6 extends BitBoard {
+
+    private BitBoard6() {
+      super(6);
+    }
+
+    @Override
+    public void clear() {
+      words[0] = 0;
+      words[1] = 0;
+      words[2] = 0;
+      words[3] = 0;
+      words[4] = 0;
+      words[5] = 0;
+    }
+
+    @Override
+    public void or(BitBoard other) {
+      long[] otherWords = other.words;
+      words[0] |= otherWords[0];
+      words[1] |= otherWords[1];
+      words[2] |= otherWords[2];
+      words[3] |= otherWords[3];
+      words[4] |= otherWords[4];
+      words[5] |= otherWords[5];
+    }
+
+    @Override
+    public void and(BitBoard other) {
+      long[] otherWords = other.words;
+      words[0] &= otherWords[0];
+      words[1] &= otherWords[1];
+      words[2] &= otherWords[2];
+      words[3] &= otherWords[3];
+      words[4] &= otherWords[4];
+      words[5] &= otherWords[5];
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return (words[0] | words[1] | words[2] | words[3] | words[4] | words[5]) == 0;
+    }
+
+    @Override
+    public int cardinality() {
+      return Long.bitCount(words[0]) + Long.bitCount(words[1]) + Long.bitCount(words[2])
+          + Long.bitCount(words[3]) + Long.bitCount(words[4]) + Long.bitCount(words[5]);
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.cauchymop.goblob.model;
+
+/**
+ * Lets another thread stop a running {@link MonteCarlo} search.
+ */
+public class CancellationToken {
+
+  private volatile boolean cancelled;
+
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+}
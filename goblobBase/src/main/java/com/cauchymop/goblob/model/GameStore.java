@@ -0,0 +1,310 @@
+package com.cauchymop.goblob.model;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.cauchymop.goblob.proto.PlayGameData.GameData;
+import static com.cauchymop.goblob.proto.PlayGameData.GameList;
+import static com.cauchymop.goblob.proto.PlayGameData.GameRecord;
+
+/**
+ * Persists the games in a file, as an append-only log of length-prefixed binary
+ * {@link GameRecord}s, so that saving a game only writes that game.
+ * <p>
+ * The last record of a match wins. An index keeps the location in the log of the last record of
+ * each game, and once the log is more than {@link #COMPACTION_RATIO} times bigger than these
+ * records, they are copied to a new log which replaces the old one. A record cut by a crash at
+ * the end of the log is dropped when loading, and a record which can't be parsed is skipped. A log
+ * whose records can't be delimited anymore fails to load, and is left as is.
+ * <p>
+ * The log must be loaded before any change. An instance must only be used by one thread at a
+ * time.
+ */
+public class GameStore {
+
+  public static final int COMPACTION_RATIO = 4;
+  // The logs smaller than this are not worth compacting.
+  private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+  private final File file;
+  // Location in the log of the last record of each game.
+  private Map<String, RecordLocation> index;
+  private Set<String> unpublished;
+  private long logBytes;
+  private long liveBytes;
+
+  public GameStore(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Reads the games and the unpublished matches of the log, and builds its index.
+   */
+  public GameList.Builder load() throws IOException {
+    index = new HashMap<>();
+    unpublished = new HashSet<>();
+    logBytes = 0;
+    liveBytes = 0;
+    GameList.Builder gameList = GameList.newBuilder();
+    if (!file.exists()) {
+      return gameList;
+    }
+    byte[] log = Files.toByteArray(file);
+    CodedInputStream input = CodedInputStream.newInstance(log);
+    input.setSizeLimit(log.length);
+    // The length of the records read, without the cut record at the end, if any.
+    int validLength = 0;
+    while (!input.isAtEnd()) {
+      int offset = validLength;
+      int length;
+      try {
+        length = input.readRawVarint32();
+      } catch (InvalidProtocolBufferException exception) {
+        if (!isVarintCut(log, offset)) {
+          throw corruptLog(offset, exception);
+        }
+        length = Integer.MAX_VALUE;
+      }
+      if (length < 0) {
+        throw corruptLog(offset, null);
+      }
+      if (length > log.length - input.getTotalBytesRead()) {
+        // The end of the log was not written.
+        truncate(offset);
+        break;
+      }
+      byte[] recordBytes = input.readRawBytes(length);
+      try {
+        apply(GameRecord.parseFrom(recordBytes),
+            new RecordLocation(offset, input.getTotalBytesRead() - offset), gameList);
+      } catch (InvalidProtocolBufferException exception) {
+        // The record is skipped, and dropped by the next compaction.
+      }
+      validLength = input.getTotalBytesRead();
+    }
+    logBytes = validLength;
+    return gameList;
+  }
+
+  /**
+   * Returns whether the varint at the offset is cut by the end of the log.
+   */
+  private static boolean isVarintCut(byte[] log, int offset) {
+    for (int i = offset; i < log.length; i++) {
+      if ((log[i] & 0x80) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private IOException corruptLog(int offset, Exception cause) {
+    index = null;
+    return new IOException("Corrupt record length at " + offset + " in " + file, cause);
+  }
+
+  private void apply(GameRecord record, RecordLocation location, GameList.Builder gameList) {
+    switch (record.getChangeCase()) {
+      case GAME:
+        GameData game = record.getGame();
+        gameList.putGames(game.getMatchId(), game);
+        setLocation(game.getMatchId(), location);
+        break;
+      case REMOVED_MATCH_ID:
+        gameList.removeGames(record.getRemovedMatchId());
+        setLocation(record.getRemovedMatchId(), null);
+        break;
+      case UNPUBLISHED_MATCH_ID:
+        gameList.putUnpublished(record.getUnpublishedMatchId(), "");
+        unpublished.add(record.getUnpublishedMatchId());
+        break;
+      case PUBLISHED_MATCH_ID:
+        gameList.removeUnpublished(record.getPublishedMatchId());
+        unpublished.remove(record.getPublishedMatchId());
+        break;
+      default:
+        // A change unknown to this version.
+        break;
+    }
+  }
+
+  private void truncate(long length) throws IOException {
+    RandomAccessFile log = new RandomAccessFile(file, "rw");
+    try {
+      log.setLength(length);
+    } finally {
+      log.close();
+    }
+  }
+
+  public void putGame(GameData game) throws IOException {
+    long offset = logBytes;
+    int size = append(GameRecord.newBuilder().setGame(game).build());
+    setLocation(game.getMatchId(), new RecordLocation(offset, size));
+    compactIfNeeded();
+  }
+
+  public void removeGame(String matchId) throws IOException {
+    checkLoaded();
+    if (index.containsKey(matchId)) {
+      append(GameRecord.newBuilder().setRemovedMatchId(matchId).build());
+      setLocation(matchId, null);
+      compactIfNeeded();
+    }
+  }
+
+  /**
+   * Records whether the last state of the match still has to be published.
+   */
+  public void setUnpublished(String matchId, boolean matchUnpublished) throws IOException {
+    checkLoaded();
+    if (unpublished.contains(matchId) == matchUnpublished) {
+      return;
+    }
+    GameRecord.Builder record = GameRecord.newBuilder();
+    if (matchUnpublished) {
+      record.setUnpublishedMatchId(matchId);
+      unpublished.add(matchId);
+    } else {
+      record.setPublishedMatchId(matchId);
+      unpublished.remove(matchId);
+    }
+    append(record.build());
+  }
+
+  private void checkLoaded() {
+    Preconditions.checkState(index != null, "The GameStore must be loaded first");
+  }
+
+  private void setLocation(String matchId, RecordLocation location) {
+    RecordLocation previous = location == null ? index.remove(matchId)
+        : index.put(matchId, location);
+    if (previous != null) {
+      liveBytes -= previous.size;
+    }
+    if (location != null) {
+      liveBytes += location.size;
+    }
+  }
+
+  /**
+   * Writes the record at the end of the log, and returns its size. A record whose write fails is
+   * cut from the log, as the next records must start where the log ends.
+   */
+  private int append(GameRecord record) throws IOException {
+    checkLoaded();
+    OutputStream output = openForAppend();
+    int size;
+    try {
+      size = writeRecord(output, record);
+      output.close();
+    } catch (IOException exception) {
+      Closeables.close(output, true);
+      dropFailedWrite();
+      throw exception;
+    }
+    logBytes += size;
+    return size;
+  }
+
+  // Package-private to fail writes in tests.
+  OutputStream openForAppend() throws IOException {
+    return new FileOutputStream(file, true);
+  }
+
+  private void dropFailedWrite() {
+    try {
+      truncate(logBytes);
+    } catch (IOException exception) {
+      // The end of the log is unknown: it must be loaded again.
+      index = null;
+    }
+  }
+
+  private static int writeRecord(OutputStream output, GameRecord record) throws IOException {
+    int recordSize = record.getSerializedSize();
+    byte[] bytes = new byte[CodedOutputStream.computeUInt32SizeNoTag(recordSize) + recordSize];
+    CodedOutputStream codedOutput = CodedOutputStream.newInstance(bytes);
+    codedOutput.writeUInt32NoTag(recordSize);
+    record.writeTo(codedOutput);
+    output.write(bytes);
+    return bytes.length;
+  }
+
+  private void compactIfNeeded() throws IOException {
+    if (logBytes > MIN_COMPACTION_BYTES && logBytes > COMPACTION_RATIO * liveBytes) {
+      compact();
+    }
+  }
+
+  /**
+   * Replaces the log by the last records of the games and the unpublished matches.
+   */
+  public void compact() throws IOException {
+    checkLoaded();
+    File compactFile = new File(file.getPath() + ".compact");
+    Map<String, RecordLocation> compactIndex = new HashMap<>();
+    long compactBytes = 0;
+    RandomAccessFile log = new RandomAccessFile(file, "r");
+    try {
+      FileOutputStream fileOutput = new FileOutputStream(compactFile);
+      OutputStream output = new BufferedOutputStream(fileOutput);
+      try {
+        for (Map.Entry<String, RecordLocation> entry : index.entrySet()) {
+          RecordLocation location = entry.getValue();
+          byte[] record = new byte[location.size];
+          log.seek(location.offset);
+          log.readFully(record);
+          output.write(record);
+          compactIndex.put(entry.getKey(), new RecordLocation(compactBytes, location.size));
+          compactBytes += location.size;
+        }
+        for (String matchId : unpublished) {
+          compactBytes += writeRecord(output,
+              GameRecord.newBuilder().setUnpublishedMatchId(matchId).build());
+        }
+        output.flush();
+        // The new log must be on disk before it replaces the old one.
+        fileOutput.getFD().sync();
+      } finally {
+        Closeables.close(output, false);
+      }
+    } finally {
+      log.close();
+    }
+    if (!compactFile.renameTo(file)) {
+      throw new IOException("Can't replace " + file + " by " + compactFile);
+    }
+    index = compactIndex;
+    logBytes = compactBytes;
+  }
+
+  public long getLogBytes() {
+    return logBytes;
+  }
+
+  private static class RecordLocation {
+    private final long offset;
+    private final int size;
+
+    private RecordLocation(long offset, int size) {
+      this.offset = offset;
+      this.size = size;
+    }
+  }
+}
@@ -1,136 +1,535 @@
 package com.cauchymop.goblob.model;
 
 import com.cauchymop.goblob.proto.PlayGameData.Color;
-import com.google.common.base.Objects;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.primitives.Ints;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * Class to represent the state of a Go board, and apply the logic of playing a move.
+ * <p>
+ * Groups are stored in a union-find structure: each stone points to a parent stone of the same
+ * group, the root stone holding the statistics of the group. The stones of a group are also
+ * linked in a ring, to visit them without scanning the board. Liberties are counted as
+ * pseudo-liberties (an empty position counts once per adjacent stone of the group), with their
+ * sum and sum of squares, which is enough to know in constant time whether a group is in atari.
+ * <p>
+ * Internally, positions are indexes in a (size + 2) x (size + 2) grid, with a border of
+ * {@code OFF_BOARD} positions, so that the neighbors of an index are always at the same offsets.
+ * Positions of the public API ({@code y * size + x}) are only converted on entry.
+ * <p>
+ * The empty indexes are kept in a list, and each index knows how many of its neighbors have each
+ * color, so that move generation doesn't need to scan the board.
+ * <p>
+ * Each index also keeps the 16 bits code of its 3x3 neighborhood, see {@link #getPatternCode}.
  */
 public class GoBoard implements Serializable {
 
-  private static final int BLACK_GROUP_START = 1;
+  private static final int EMPTY = 0;
+  private static final int BLACK = 1;
+  private static final int WHITE = 2;
+  private static final int OFF_BOARD = 3;
+  private static final Color[] COLORS = {null, Color.BLACK, Color.WHITE};
 
-  private static Map<Integer, int[][]> neighborPositionsByPositionCache = Maps.newHashMap();
+  // Undo records are a payload followed by the record type, see undo() for the payloads.
+  private static final int UNDO_COLOR = 0;
+  private static final int UNDO_PARENT = 1;
+  private static final int UNDO_NEW_GROUP = 2;
+  private static final int UNDO_MERGE = 3;
+  private static final int UNDO_LIBERTY_ADDED = 4;
+  private static final int UNDO_LIBERTY_REMOVED = 5;
 
-  private final int[][] neighborPositionsByPosition;
+  private static Map<Integer, int[]> indexByPositionCache = Maps.newConcurrentMap();
+  private static Map<Integer, int[]> positionByIndexCache = Maps.newConcurrentMap();
+  private static Map<Integer, long[][]> zobristKeysCache = Maps.newConcurrentMap();
+
+  private final int[] indexByPosition;
+  private final int[] positionByIndex;
+  private final int[] neighborOffsets;
+  // Offsets of the 8 surrounding indexes, in the order of the slots of the pattern codes.
+  private final int[] patternOffsets;
+  private final long[][] zobristKeys;
   private final int size;
   private final int numberOfPositions;
-  private final int numberOfGroups;
-  private final int whiteGroupStart;
-  private int[] groupByPosition;
-  private BitSet blackField;
-  private BitSet whiteField;
-  private BitSet[] stoneFieldByGroup;
-  private BitSet[] libertyFieldByGroup;
+  private final int numberOfIndexes;
+  private final int[] colorByIndex;
+  private BitBoard blackField;
+  private BitBoard whiteField;
+  private long zobristHash;
+  // Number of black stones minus number of white stones.
+  private int stoneDifference;
+
+  // Empty indexes, and position of each empty index in the list.
+  private final int[] emptyIndexes;
+  private final int[] emptyListPositionByIndex;
+  private int emptyCount;
+  // Number of neighbors of each color (OFF_BOARD included) for each index.
+  private final int[][] neighborCountByColor;
+  // Colors of the 8 surrounding indexes of each index, 2 bits each.
+  private final int[] patternCodes;
+
+  // Groups, only meaningful for indexes holding a stone.
+  private final int[] parent;
+  private final int[] nextStone;
+  // Group statistics, only meaningful for roots.
+  private final int[] stoneCount;
+  private final int[] libertyCount;
+  private final int[] libertySum;
+  private final int[] libertySumOfSquares;
+
+  // Undo management.
+  private int[] undoLog = new int[1024];
+  private int undoLogSize;
+  private int[] undoEntryStarts = new int[256];
+  private int undoCount;
+  private final int[] pastColorByIndex;
+  private final int[] touchedIndexes;
+  private final int[] comparisonStamps;
+  private int comparisonStamp;
+  // Work buffer of isSelfAtari.
+  private final int[] friendRoots = new int[4];
 
   public GoBoard(int size) {
     this.size = size;
     numberOfPositions = size * size;
-    // Worst case, every other intersection is occupied by a stone of the same color.
-    int numberOfGroupsPerColor = numberOfPositions / 2 + 1;
-    // One set per color, plus zero which means empty
-    numberOfGroups = 2 * numberOfGroupsPerColor + 1;
-    whiteGroupStart = BLACK_GROUP_START + numberOfGroupsPerColor;
-    neighborPositionsByPosition = getNeighborPositionsByPosition();
-    blackField = new BitSet(numberOfPositions);
-    whiteField = new BitSet(numberOfPositions);
-    groupByPosition = new int[numberOfPositions];
-    stoneFieldByGroup = new BitSet[numberOfGroups];
-    libertyFieldByGroup = new BitSet[numberOfGroups];
-    for (int index = 0; index < numberOfGroups; index++) {
-      stoneFieldByGroup[index] = new BitSet();
-      libertyFieldByGroup[index] = new BitSet();
-    }
+    int stride = size + 2;
+    numberOfIndexes = stride * stride;
+    indexByPosition = getIndexByPosition();
+    positionByIndex = getPositionByIndex();
+    neighborOffsets = new int[] {-stride, -1, 1, stride};
+    patternOffsets = new int[] {-stride - 1, -stride, -stride + 1, -1, 1, stride - 1, stride,
+        stride + 1};
+    zobristKeys = getZobristKeys();
+    colorByIndex = new int[numberOfIndexes];
+    blackField = BitBoard.forBoardSize(size);
+    whiteField = BitBoard.forBoardSize(size);
+    emptyIndexes = new int[numberOfPositions];
+    emptyListPositionByIndex = new int[numberOfIndexes];
+    neighborCountByColor = new int[4][numberOfIndexes];
+    patternCodes = new int[numberOfIndexes];
+    parent = new int[numberOfIndexes];
+    nextStone = new int[numberOfIndexes];
+    stoneCount = new int[numberOfIndexes];
+    libertyCount = new int[numberOfIndexes];
+    libertySum = new int[numberOfIndexes];
+    libertySumOfSquares = new int[numberOfIndexes];
+    pastColorByIndex = new int[numberOfIndexes];
+    touchedIndexes = new int[numberOfIndexes];
+    comparisonStamps = new int[numberOfIndexes];
+    clear();
   }
 
   public void clear() {
+    Arrays.fill(colorByIndex, OFF_BOARD);
+    emptyCount = 0;
+    for (int index : indexByPosition) {
+      colorByIndex[index] = EMPTY;
+      addEmptyIndex(index);
+    }
+    for (int[] neighborCount : neighborCountByColor) {
+      Arrays.fill(neighborCount, 0);
+    }
+    Arrays.fill(patternCodes, 0);
+    for (int index : indexByPosition) {
+      for (int offset : neighborOffsets) {
+        neighborCountByColor[colorByIndex[index + offset]][index]++;
+      }
+      for (int slot = 0; slot < patternOffsets.length; slot++) {
+        patternCodes[index] |= colorByIndex[index + patternOffsets[slot]] << (2 * slot);
+      }
+    }
     blackField.clear();
     whiteField.clear();
-    Arrays.fill(groupByPosition, 0);
-    for (int i = 0; i < numberOfGroups; i++) {
-      stoneFieldByGroup[i].clear();
-      libertyFieldByGroup[i].clear();
-    }
+    zobristHash = 0;
+    stoneDifference = 0;
+    undoLogSize = 0;
+    undoCount = 0;
   }
 
-  private int[][] getNeighborPositionsByPosition() {
-    if (neighborPositionsByPositionCache.containsKey(size)) {
-      return neighborPositionsByPositionCache.get(size);
+  private int[] getIndexByPosition() {
+    if (indexByPositionCache.containsKey(size)) {
+      return indexByPositionCache.get(size);
     }
-    int[][] neighborPositionsByPositions = new int[numberOfPositions][];
+    int[] indexByPositions = new int[numberOfPositions];
     for (int x = 0; x < size; x++) {
       for (int y = 0; y < size; y++) {
-        ArrayList<Integer> neighbors = Lists.newArrayList();
-        if (x > 0) neighbors.add(getPos(x - 1, y));
-        if (y > 0) neighbors.add(getPos(x, y - 1));
-        if (x < size - 1) neighbors.add(getPos(x + 1, y));
-        if (y < size - 1) neighbors.add(getPos(x, y + 1));
-        neighborPositionsByPositions[getPos(x, y)] = Ints.toArray(neighbors);
+        indexByPositions[getPos(x, y)] = (y + 1) * (size + 2) + x + 1;
       }
     }
-    neighborPositionsByPositionCache.put(size, neighborPositionsByPositions);
-    return neighborPositionsByPositions;
+    indexByPositionCache.put(size, indexByPositions);
+    return indexByPositions;
+  }
+
+  private int[] getPositionByIndex() {
+    if (positionByIndexCache.containsKey(size)) {
+      return positionByIndexCache.get(size);
+    }
+    int[] positionByIndexes = new int[numberOfIndexes];
+    Arrays.fill(positionByIndexes, -1);
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      positionByIndexes[indexByPosition[pos]] = pos;
+    }
+    positionByIndexCache.put(size, positionByIndexes);
+    return positionByIndexes;
+  }
+
+  /**
+   * Returns one random key per color and index (zero for empty indexes). The seed only
+   * depends on the size, so that hashes stay comparable between instances (and across
+   * serialization).
+   */
+  private long[][] getZobristKeys() {
+    if (zobristKeysCache.containsKey(size)) {
+      return zobristKeysCache.get(size);
+    }
+    Random random = new Random(size);
+    long[][] keys = new long[3][numberOfIndexes];
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      keys[BLACK][indexByPosition[pos]] = random.nextLong();
+      keys[WHITE][indexByPosition[pos]] = random.nextLong();
+    }
+    zobristKeysCache.put(size, keys);
+    return keys;
   }
 
   /**
-   * Plays a move.
+   * Plays a move. Whether it is valid or not, the move can be reverted with {@link #undo()}.
    *
-   * @return whether the move was valid and played (if it was not, this instance can't be used anymore)
+   * @return whether the move was valid (if it was not, it must be undone before playing again)
    */
   public boolean play(Color color, int move) {
-    if (groupByPosition[move] != 0) {
+    startUndoEntry();
+    int index = indexByPosition[move];
+    if (colorByIndex[index] != EMPTY) {
       return false;
     }
 
-    BitSet friendField = getField(color);
-    BitSet foeField = getField(getOpponent(color));
-    friendField.set(move);
-
-    int group = getAvailableGroup(color);
-    groupByPosition[move] = group;
-    stoneFieldByGroup[group].set(move);
-    libertyFieldByGroup[group].clear();
-    for (int neighbor : neighborPositionsByPosition[move]) {
-      if (friendField.get(neighbor)) {
-        int friendGroup = groupByPosition[neighbor];
-        if (friendGroup != group) {
-          stoneFieldByGroup[group].or(stoneFieldByGroup[friendGroup]);
-          for (int pos = stoneFieldByGroup[friendGroup].nextSetBit(0); pos != -1;
-               pos = stoneFieldByGroup[friendGroup].nextSetBit(pos + 1)) {
-            groupByPosition[pos] = group;
-          }
-          libertyFieldByGroup[group].or(libertyFieldByGroup[friendGroup]);
-          stoneFieldByGroup[friendGroup].clear();
-        }
-      } else if (foeField.get(neighbor)) {
-        int foeGroup = groupByPosition[neighbor];
-        libertyFieldByGroup[foeGroup].clear(move);
-        if (libertyFieldByGroup[foeGroup].isEmpty()) {
+    int friendColor = getColorCode(color);
+    setColor(index, friendColor);
+    createGroup(index);
+    for (int offset : neighborOffsets) {
+      int neighbor = index + offset;
+      int neighborColor = colorByIndex[neighbor];
+      if (neighborColor == EMPTY) {
+        addLiberty(index, neighbor);
+      } else if (neighborColor != OFF_BOARD) {
+        removeLiberty(find(neighbor), index);
+      }
+    }
+    for (int offset : neighborOffsets) {
+      int neighbor = index + offset;
+      int neighborColor = colorByIndex[neighbor];
+      if (neighborColor == friendColor) {
+        merge(find(index), find(neighbor));
+      } else if (neighborColor != EMPTY && neighborColor != OFF_BOARD) {
+        int foeGroup = find(neighbor);
+        if (libertyCount[foeGroup] == 0) {
           capture(foeGroup);
         }
-      } else {
-        libertyFieldByGroup[group].set(neighbor);
       }
     }
 
-    libertyFieldByGroup[group].clear(move);
     //noinspection RedundantIfStatement
-    if (libertyFieldByGroup[group].isEmpty()) {
+    if (libertyCount[find(index)] == 0) {
       return false;
     }
 
     return true;
   }
 
+  /**
+   * Reverts the last call to {@link #play(Color, int)}, in time proportional to the number of
+   * changes it made.
+   */
+  public void undo() {
+    int undoEntryStart = undoEntryStarts[--undoCount];
+    while (undoLogSize > undoEntryStart) {
+      int type = undoLog[--undoLogSize];
+      switch (type) {
+        case UNDO_COLOR: {
+          // Index, old color.
+          int oldColor = undoLog[--undoLogSize];
+          doSetColor(undoLog[--undoLogSize], oldColor);
+          break;
+        }
+        case UNDO_PARENT: {
+          // Index, old parent.
+          int oldParent = undoLog[--undoLogSize];
+          parent[undoLog[--undoLogSize]] = oldParent;
+          break;
+        }
+        case UNDO_NEW_GROUP: {
+          // Index, old parent, next stone and group statistics.
+          undoLogSize -= 7;
+          int index = undoLog[undoLogSize];
+          parent[index] = undoLog[undoLogSize + 1];
+          nextStone[index] = undoLog[undoLogSize + 2];
+          stoneCount[index] = undoLog[undoLogSize + 3];
+          libertyCount[index] = undoLog[undoLogSize + 4];
+          libertySum[index] = undoLog[undoLogSize + 5];
+          libertySumOfSquares[index] = undoLog[undoLogSize + 6];
+          break;
+        }
+        case UNDO_MERGE: {
+          // Absorbing root, absorbed root.
+          int absorbed = undoLog[--undoLogSize];
+          int root = undoLog[--undoLogSize];
+          swapNextStones(root, absorbed);
+          parent[absorbed] = absorbed;
+          stoneCount[root] -= stoneCount[absorbed];
+          libertyCount[root] -= libertyCount[absorbed];
+          libertySum[root] -= libertySum[absorbed];
+          libertySumOfSquares[root] -= libertySumOfSquares[absorbed];
+          break;
+        }
+        case UNDO_LIBERTY_ADDED: {
+          // Root, liberty.
+          int liberty = undoLog[--undoLogSize];
+          doRemoveLiberty(undoLog[--undoLogSize], liberty);
+          break;
+        }
+        case UNDO_LIBERTY_REMOVED: {
+          // Root, liberty.
+          int liberty = undoLog[--undoLogSize];
+          doAddLiberty(undoLog[--undoLogSize], liberty);
+          break;
+        }
+        default:
+          throw new RuntimeException("Invalid undo record");
+      }
+    }
+  }
+
+  /**
+   * Returns the number of moves that can be undone.
+   */
+  public int getUndoCount() {
+    return undoCount;
+  }
+
+  /**
+   * Returns whether the stones are the same as when {@link #getUndoCount()} was
+   * {@code pastUndoCount}. Only the indexes changed since then are compared.
+   */
+  public boolean hasSameStones(int pastUndoCount) {
+    int pastUndoLogSize = (pastUndoCount == undoCount) ? undoLogSize : undoEntryStarts[pastUndoCount];
+    int touchedCount = 0;
+    comparisonStamp++;
+    // Walk back in time, so that the last value seen for an index is its past value.
+    for (int end = undoLogSize; end > pastUndoLogSize; end -= getUndoRecordSize(undoLog[end - 1])) {
+      if (undoLog[end - 1] != UNDO_COLOR) {
+        continue;
+      }
+      int index = undoLog[end - 3];
+      if (comparisonStamps[index] != comparisonStamp) {
+        comparisonStamps[index] = comparisonStamp;
+        touchedIndexes[touchedCount++] = index;
+      }
+      pastColorByIndex[index] = undoLog[end - 2];
+    }
+    for (int i = 0; i < touchedCount; i++) {
+      int index = touchedIndexes[i];
+      if (pastColorByIndex[index] != colorByIndex[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int getUndoRecordSize(int type) {
+    return (type == UNDO_NEW_GROUP) ? 8 : 3;
+  }
+
+  private void startUndoEntry() {
+    if (undoCount == undoEntryStarts.length) {
+      undoEntryStarts = Arrays.copyOf(undoEntryStarts, 2 * undoCount);
+    }
+    undoEntryStarts[undoCount++] = undoLogSize;
+  }
+
+  private void ensureUndoLogCapacity(int recordSize) {
+    if (undoLogSize + recordSize > undoLog.length) {
+      undoLog = Arrays.copyOf(undoLog, 2 * undoLog.length);
+    }
+  }
+
+  private void addUndoRecord(int type, int first, int second) {
+    ensureUndoLogCapacity(3);
+    undoLog[undoLogSize++] = first;
+    undoLog[undoLogSize++] = second;
+    undoLog[undoLogSize++] = type;
+  }
+
+  private void setColor(int index, int color) {
+    addUndoRecord(UNDO_COLOR, index, colorByIndex[index]);
+    doSetColor(index, color);
+  }
+
+  /**
+   * Sets the color of an index, and maintains the color fields, the stone difference, the hash,
+   * the empty indexes and the neighbor counts accordingly.
+   */
+  private void doSetColor(int index, int color) {
+    int oldColor = colorByIndex[index];
+    colorByIndex[index] = color;
+    zobristHash ^= zobristKeys[oldColor][index] ^ zobristKeys[color][index];
+    if (oldColor == EMPTY) {
+      removeEmptyIndex(index);
+    } else if (color == EMPTY) {
+      addEmptyIndex(index);
+    }
+    int[] oldColorNeighborCount = neighborCountByColor[oldColor];
+    int[] colorNeighborCount = neighborCountByColor[color];
+    for (int offset : neighborOffsets) {
+      oldColorNeighborCount[index + offset]--;
+      colorNeighborCount[index + offset]++;
+    }
+    // The index is in the opposite slot of each of the surrounding indexes.
+    int lastSlot = patternOffsets.length - 1;
+    for (int slot = 0; slot <= lastSlot; slot++) {
+      patternCodes[index + patternOffsets[slot]] += (color - oldColor) << (2 * (lastSlot - slot));
+    }
+    int pos = positionByIndex[index];
+    if (oldColor == BLACK) {
+      blackField.clear(pos);
+      stoneDifference--;
+    } else if (oldColor == WHITE) {
+      whiteField.clear(pos);
+      stoneDifference++;
+    }
+    if (color == BLACK) {
+      blackField.set(pos);
+      stoneDifference++;
+    } else if (color == WHITE) {
+      whiteField.set(pos);
+      stoneDifference--;
+    }
+  }
+
+  private void addEmptyIndex(int index) {
+    emptyListPositionByIndex[index] = emptyCount;
+    emptyIndexes[emptyCount++] = index;
+  }
+
+  /**
+   * Removes an index from the empty indexes, replacing it with the last one.
+   */
+  private void removeEmptyIndex(int index) {
+    int lastIndex = emptyIndexes[--emptyCount];
+    int listPosition = emptyListPositionByIndex[index];
+    emptyIndexes[listPosition] = lastIndex;
+    emptyListPositionByIndex[lastIndex] = listPosition;
+  }
+
+  private void createGroup(int index) {
+    ensureUndoLogCapacity(8);
+    undoLog[undoLogSize++] = index;
+    undoLog[undoLogSize++] = parent[index];
+    undoLog[undoLogSize++] = nextStone[index];
+    undoLog[undoLogSize++] = stoneCount[index];
+    undoLog[undoLogSize++] = libertyCount[index];
+    undoLog[undoLogSize++] = libertySum[index];
+    undoLog[undoLogSize++] = libertySumOfSquares[index];
+    undoLog[undoLogSize++] = UNDO_NEW_GROUP;
+    parent[index] = index;
+    nextStone[index] = index;
+    stoneCount[index] = 1;
+    libertyCount[index] = 0;
+    libertySum[index] = 0;
+    libertySumOfSquares[index] = 0;
+  }
+
+  /**
+   * Returns the root of the group of a stone, compressing the path to it.
+   */
+  private int find(int index) {
+    int root = index;
+    while (parent[root] != root) {
+      root = parent[root];
+    }
+    while (parent[index] != root) {
+      int next = parent[index];
+      addUndoRecord(UNDO_PARENT, index, next);
+      parent[index] = root;
+      index = next;
+    }
+    return root;
+  }
+
+  /**
+   * Returns the root of the group of a stone, without modifying the board.
+   */
+  private int getRoot(int index) {
+    while (parent[index] != index) {
+      index = parent[index];
+    }
+    return index;
+  }
+
+  /**
+   * Merges two groups, attaching the smallest one to the other one.
+   */
+  private void merge(int root1, int root2) {
+    if (root1 == root2) {
+      return;
+    }
+    int root = (stoneCount[root1] >= stoneCount[root2]) ? root1 : root2;
+    int absorbed = (root == root1) ? root2 : root1;
+    addUndoRecord(UNDO_MERGE, root, absorbed);
+    parent[absorbed] = root;
+    swapNextStones(root, absorbed);
+    stoneCount[root] += stoneCount[absorbed];
+    libertyCount[root] += libertyCount[absorbed];
+    libertySum[root] += libertySum[absorbed];
+    libertySumOfSquares[root] += libertySumOfSquares[absorbed];
+  }
+
+  /**
+   * Joins two stone rings into one, or splits them back when applied again.
+   */
+  private void swapNextStones(int index1, int index2) {
+    int next1 = nextStone[index1];
+    nextStone[index1] = nextStone[index2];
+    nextStone[index2] = next1;
+  }
+
+  private void addLiberty(int root, int liberty) {
+    addUndoRecord(UNDO_LIBERTY_ADDED, root, liberty);
+    doAddLiberty(root, liberty);
+  }
+
+  private void doAddLiberty(int root, int liberty) {
+    libertyCount[root]++;
+    libertySum[root] += liberty;
+    libertySumOfSquares[root] += liberty * liberty;
+  }
+
+  private void removeLiberty(int root, int liberty) {
+    addUndoRecord(UNDO_LIBERTY_REMOVED, root, liberty);
+    doRemoveLiberty(root, liberty);
+  }
+
+  private void doRemoveLiberty(int root, int liberty) {
+    libertyCount[root]--;
+    libertySum[root] -= liberty;
+    libertySumOfSquares[root] -= liberty * liberty;
+  }
+
+  /**
+   * Returns whether a group has exactly one liberty: this is the case when all its
+   * pseudo-liberties are the same index, i.e. when their variance is zero.
+   */
+  private boolean isGroupInAtari(int root) {
+    return hasOneLiberty(libertyCount[root], libertySum[root], libertySumOfSquares[root]);
+  }
+
+  private static boolean hasOneLiberty(int count, long sum, long sumOfSquares) {
+    return count > 0 && sum * sum == count * sumOfSquares;
+  }
+
   public static Color getOpponent(Color color) {
     switch (color) {
       case WHITE:
@@ -143,40 +542,29 @@ public class GoBoard implements Serializable {
 
   }
 
-  private BitSet getField(Color color) {
-    return (color == Color.BLACK) ? blackField : whiteField;
+  private static int getColorCode(Color color) {
+    return (color == Color.BLACK) ? BLACK : WHITE;
   }
 
-  private int getAvailableGroup(Color color) {
-    int groupStart = (color == Color.BLACK) ? BLACK_GROUP_START : whiteGroupStart;
-    for (int group = groupStart; ; group++) {
-      if (stoneFieldByGroup[group].isEmpty()) return group;
-    }
-  }
+  private void capture(int root) {
+    // Remove the stones.
+    int index = root;
+    do {
+      setColor(index, EMPTY);
+      index = nextStone[index];
+    } while (index != root);
 
-  private void capture(int group) {
-    Color foeColor = getOpponent(getColorByGroup(group));
-    for (int pos = stoneFieldByGroup[group].nextSetBit(0); pos != -1;
-         pos = stoneFieldByGroup[group].nextSetBit(pos + 1)) {
-      // Remove the stone.
-      whiteField.clear(pos);
-      blackField.clear(pos);
-      groupByPosition[pos] = 0;
-      stoneFieldByGroup[group].clear(pos);
-
-      // Create new liberties for neighbors.
-      for (int neighbor : neighborPositionsByPosition[pos]) {
-        int neighborGroup = groupByPosition[neighbor];
-        if (getColorByGroup(neighborGroup) == foeColor) {
-          libertyFieldByGroup[neighborGroup].set(pos);
+    // Create new liberties for neighbors.
+    do {
+      for (int offset : neighborOffsets) {
+        int neighbor = index + offset;
+        int neighborColor = colorByIndex[neighbor];
+        if (neighborColor != EMPTY && neighborColor != OFF_BOARD) {
+          addLiberty(find(neighbor), index);
         }
       }
-    }
-  }
-
-  private Color getColorByGroup(int group) {
-    if (group == 0) return null;
-    return (group < whiteGroupStart) ? Color.BLACK : Color.WHITE;
+      index = nextStone[index];
+    } while (index != root);
   }
 
   public Color getColor(int x, int y) {
@@ -184,7 +572,7 @@ public class GoBoard implements Serializable {
   }
 
   public Color getColor(int pos) {
-    return getColorByGroup(groupByPosition[pos]);
+    return COLORS[colorByIndex[indexByPosition[pos]]];
   }
 
   public int getSize() {
@@ -192,30 +580,152 @@ public class GoBoard implements Serializable {
   }
 
   public void copyFrom(GoBoard board) {
-    System.arraycopy(board.groupByPosition, 0, groupByPosition, 0, numberOfPositions);
+    System.arraycopy(board.colorByIndex, 0, colorByIndex, 0, numberOfIndexes);
+    System.arraycopy(board.emptyIndexes, 0, emptyIndexes, 0, numberOfPositions);
+    System.arraycopy(board.emptyListPositionByIndex, 0, emptyListPositionByIndex, 0,
+        numberOfIndexes);
+    emptyCount = board.emptyCount;
+    for (int color = 0; color < neighborCountByColor.length; color++) {
+      System.arraycopy(board.neighborCountByColor[color], 0, neighborCountByColor[color], 0,
+          numberOfIndexes);
+    }
+    System.arraycopy(board.patternCodes, 0, patternCodes, 0, numberOfIndexes);
+    System.arraycopy(board.parent, 0, parent, 0, numberOfIndexes);
+    System.arraycopy(board.nextStone, 0, nextStone, 0, numberOfIndexes);
+    System.arraycopy(board.stoneCount, 0, stoneCount, 0, numberOfIndexes);
+    System.arraycopy(board.libertyCount, 0, libertyCount, 0, numberOfIndexes);
+    System.arraycopy(board.libertySum, 0, libertySum, 0, numberOfIndexes);
+    System.arraycopy(board.libertySumOfSquares, 0, libertySumOfSquares, 0, numberOfIndexes);
+    blackField.clear();
     blackField.or(board.blackField);
+    whiteField.clear();
     whiteField.or(board.whiteField);
-    for (int index = 0; index < numberOfGroups; index++) {
-      stoneFieldByGroup[index].or(board.stoneFieldByGroup[index]);
-      libertyFieldByGroup[index].or(board.libertyFieldByGroup[index]);
-    }
+    zobristHash = board.zobristHash;
+    stoneDifference = board.stoneDifference;
+    undoLogSize = 0;
+    undoCount = 0;
   }
 
   public int getPos(int x, int y) {
     return y * size + x;
   }
 
+  /**
+   * Returns a 64 bits hash of the stones on the board, maintained incrementally as moves are
+   * played. Equal boards have equal hashes, the reverse is only true with high probability.
+   */
+  public long getZobristHash() {
+    return zobristHash;
+  }
+
+  /**
+   * Returns the number of black stones minus the number of white stones, maintained
+   * incrementally.
+   */
   public int getScore() {
-    return blackField.cardinality() - whiteField.cardinality();
+    return stoneDifference;
   }
 
-  public boolean isEyeFilling(int position, Color color) {
-    int[] neighborPositions = neighborPositionsByPosition[position];
-    for (int neighborPosition : neighborPositions) {
-      if (getColor(neighborPosition) != color) {
+  /**
+   * Returns the number of empty positions.
+   */
+  public int getEmptyCount() {
+    return emptyCount;
+  }
+
+  /**
+   * Returns an empty position, {@code i} being between 0 and {@link #getEmptyCount()} excluded.
+   * The order of the empty positions changes as moves are played.
+   */
+  public int getEmptyPosition(int i) {
+    return positionByIndex[emptyIndexes[i]];
+  }
+
+  /**
+   * Returns the code of the 3x3 neighborhood of a position: the colors (empty 0, black 1, white 2,
+   * off board 3) of its 8 surrounding positions, 2 bits each, from the top left one in the low
+   * bits to the bottom right one, row by row. It's maintained incrementally as stones are added
+   * and removed.
+   */
+  public int getPatternCode(int position) {
+    return patternCodes[indexByPosition[position]];
+  }
+
+  /**
+   * Returns whether the group of the stone at the position has a single liberty.
+   */
+  public boolean isInAtari(int position) {
+    int index = indexByPosition[position];
+    return colorByIndex[index] != EMPTY && isGroupInAtari(getRoot(index));
+  }
+
+  /**
+   * Returns the only liberty of the group of the stone at the position, which must be in atari.
+   * All its pseudo-liberties are the same, so it's their mean.
+   */
+  public int getAtariLiberty(int position) {
+    int root = getRoot(indexByPosition[position]);
+    return positionByIndex[libertySum[root] / libertyCount[root]];
+  }
+
+  /**
+   * Returns whether playing at the empty position would leave the group of the new stone with
+   * at most one liberty, without capturing anything. The liberties of the group are computed
+   * from the statistics of the adjacent groups, without playing the move.
+   */
+  public boolean isSelfAtari(int position, Color color) {
+    int colorCode = getColorCode(color);
+    int index = indexByPosition[position];
+    int count = 0;
+    long sum = 0;
+    long sumOfSquares = 0;
+    int friendRootCount = 0;
+    for (int offset : neighborOffsets) {
+      int neighbor = index + offset;
+      int neighborColor = colorByIndex[neighbor];
+      if (neighborColor == EMPTY) {
+        count++;
+        sum += neighbor;
+        sumOfSquares += neighbor * neighbor;
+      } else if (neighborColor == colorCode) {
+        int root = getRoot(neighbor);
+        if (!contains(friendRoots, friendRootCount, root)) {
+          friendRoots[friendRootCount++] = root;
+          count += libertyCount[root];
+          sum += libertySum[root];
+          sumOfSquares += libertySumOfSquares[root];
+        }
+      } else if (neighborColor != OFF_BOARD && isGroupInAtari(getRoot(neighbor))) {
+        // Captures a group, which gives a liberty at least.
         return false;
       }
-      if (libertyFieldByGroup[groupByPosition[neighborPosition]].cardinality() == 1) {
+    }
+    // The position itself is no longer a liberty of the adjacent friend stones.
+    int friendNeighbors = neighborCountByColor[colorCode][index];
+    count -= friendNeighbors;
+    sum -= (long) friendNeighbors * index;
+    sumOfSquares -= (long) friendNeighbors * index * index;
+    return count == 0 || hasOneLiberty(count, sum, sumOfSquares);
+  }
+
+  private static boolean contains(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean isEyeFilling(int position, Color color) {
+    int colorCode = getColorCode(color);
+    int index = indexByPosition[position];
+    if (neighborCountByColor[colorCode][index] + neighborCountByColor[OFF_BOARD][index] != 4) {
+      return false;
+    }
+    for (int offset : neighborOffsets) {
+      int neighbor = index + offset;
+      if (colorByIndex[neighbor] == colorCode && isGroupInAtari(getRoot(neighbor))) {
         return false;
       }
     }
@@ -234,6 +744,6 @@ public class GoBoard implements Serializable {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(blackField, whiteField);
+    return (int) (zobristHash ^ (zobristHash >>> 32));
   }
 }
@@ -1,12 +1,11 @@
 package com.cauchymop.goblob.model;
 
 import com.google.common.base.Objects;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -23,18 +22,18 @@ public class GoGame implements Serializable {
   private int handicap;
   private GoBoard board;
   private Color currentColor;
-  private ArrayList<GoBoard> boardHistory = Lists.newArrayList();
-  private ArrayList<Integer> moveHistory = Lists.newArrayList();
-  // Instance pool management.
-  private transient LinkedList<GoBoard> boardPool = Lists.newLinkedList();
+  private int[] moveHistory = new int[64];
+  private int moveCount;
+  // Positions of the game, the first one being the initial position.
+  private PositionHistory positionHistory = new PositionHistory();
 
   public GoGame(int boardSize, int handicap) {
     this.boardSize = boardSize;
     currentColor = Color.BLACK;
-    board = getNewBoard();
+    board = new GoBoard(boardSize);
     this.handicap = handicap;
     placeHandicapStones();
-    boardHistory.add(board);
+    addPositionToHistory();
   }
 
   private void placeHandicapStones() {
@@ -63,55 +62,47 @@ public class GoGame implements Serializable {
     board.play(Color.BLACK, board.getPos(pos3, pos2));
   }
 
-  private GoBoard getNewBoard() {
-    if (boardPool.isEmpty()) {
-      return new GoBoard(boardSize);
-    }
-    GoBoard board = boardPool.remove(0);
-    board.clear();
-    return board;
-  }
-
-  private void recycleBoard(GoBoard board) {
-    boardPool.add(board);
-  }
-
   public boolean play(int move) {
-    GoBoard newBoard = getNewBoard();
-    newBoard.copyFrom(board);
-
     if (move == getPassValue()) {
-      applyMove(newBoard, move);
+      applyMove(move);
       return true;
     }
 
-    if (newBoard.play(currentColor, move) && !boardHistory.contains(newBoard)) {
-      applyMove(newBoard, move);
+    // Positional superko: the board can't repeat a previous position.
+    if (board.play(currentColor, move) && !positionHistory.contains(board)) {
+      applyMove(move);
       return true;
     }
 
-    recycleBoard(newBoard);
+    board.undo();
     return false;
   }
 
-  private void applyMove(GoBoard newBoard, int move) {
-    boardHistory.add(newBoard);
-    moveHistory.add(move);
-    board = newBoard;
+  private void applyMove(int move) {
+    if (moveCount == moveHistory.length) {
+      moveHistory = Arrays.copyOf(moveHistory, 2 * moveCount);
+    }
+    moveHistory[moveCount++] = move;
+    addPositionToHistory();
     currentColor = GoBoard.getOpponent(currentColor);
   }
 
+  private void addPositionToHistory() {
+    positionHistory.add(board.getZobristHash(), board.getUndoCount());
+  }
+
   public void undo() {
     currentColor = GoBoard.getOpponent(currentColor);
-    recycleBoard(boardHistory.remove(boardHistory.size() - 1));
-    moveHistory.remove(moveHistory.size() - 1);
-    board = boardHistory.get(boardHistory.size() - 1);
+    positionHistory.removeLast();
+    if (moveHistory[--moveCount] != getPassValue()) {
+      board.undo();
+    }
   }
 
   public GoGame copy() {
     GoGame copy = new GoGame(boardSize, handicap);
-    for (Integer move : moveHistory) {
-      copy.play(move);
+    for (int index = 0; index < moveCount; index++) {
+      copy.play(moveHistory[index]);
     }
     return copy;
   }
@@ -121,11 +112,11 @@ public class GoGame implements Serializable {
   }
 
   public boolean isGameEnd() {
-    if (moveHistory.size() < 2) {
+    if (moveCount < 2) {
       return false;
     }
-    int lastMove = moveHistory.get(moveHistory.size() - 1);
-    int previousMove = moveHistory.get(moveHistory.size() - 2);
+    int lastMove = moveHistory[moveCount - 1];
+    int previousMove = moveHistory[moveCount - 2];
     int passMove = getPassValue();
     return lastMove == passMove && previousMove == passMove;
   }
@@ -142,6 +133,10 @@ public class GoGame implements Serializable {
     return boardSize;
   }
 
+  public int getHandicap() {
+    return handicap;
+  }
+
   public boolean isLastMovePass() {
     return getLastMove() == getPassValue();
   }
@@ -151,11 +146,25 @@ public class GoGame implements Serializable {
   }
 
   public int getLastMove() {
-    return (moveHistory.isEmpty()) ? NO_MOVE : moveHistory.get(moveHistory.size() - 1);
+    return (moveCount == 0) ? NO_MOVE : moveHistory[moveCount - 1];
   }
 
+  /**
+   * Returns a copy of the moves played so far.
+   */
   public List<Integer> getMoveHistory() {
-    return moveHistory;
+    return Ints.asList(Arrays.copyOf(moveHistory, moveCount));
+  }
+
+  public int getMoveCount() {
+    return moveCount;
+  }
+
+  /**
+   * Returns the move played at the given index of the history.
+   */
+  public int getMove(int index) {
+    return moveHistory[index];
   }
 
   @Override
@@ -171,12 +180,12 @@ public class GoGame implements Serializable {
     GoGame goGame = (GoGame) o;
 
     return Objects.equal(boardSize, goGame.boardSize)
-        && Objects.equal(moveHistory, goGame.moveHistory);
+        && Objects.equal(getMoveHistory(), goGame.getMoveHistory());
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(boardSize, moveHistory);
+    return Objects.hashCode(boardSize, getMoveHistory());
   }
 
   public GoBoard getBoard() {
@@ -185,12 +194,28 @@ public class GoGame implements Serializable {
 
   public Set<Integer> getNonEyeFillingMoves() {
     Set<Integer> moves = Sets.newHashSet();
-    for (int pos = 0 ; pos < boardSize*boardSize ; pos++) {
-      if (board.getColor(pos) == null && !board.isEyeFilling(pos, currentColor)) {
+    for (int i = 0; i < board.getEmptyCount(); i++) {
+      int pos = board.getEmptyPosition(i);
+      if (!board.isEyeFilling(pos, currentColor)) {
         moves.add(pos);
       }
     }
     return moves;
   }
+
+  /**
+   * Fills {@code moves} with the moves which are not filling an eye of the current player, and
+   * returns their number. {@code moves} must be able to hold all the positions of the board.
+   */
+  public int getNonEyeFillingMoves(int[] moves) {
+    int count = 0;
+    for (int i = 0; i < board.getEmptyCount(); i++) {
+      int pos = board.getEmptyPosition(i);
+      if (!board.isEyeFilling(pos, currentColor)) {
+        moves[count++] = pos;
+      }
+    }
+    return count;
+  }
 }
 
@@ -3,7 +3,6 @@ package com.cauchymop.goblob.model;
 import com.cauchymop.goblob.proto.PlayGameData;
 import com.cauchymop.goblob.proto.PlayGameData.GameData.Phase;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Sets;
 
 import java.io.Serializable;
 import java.util.List;
@@ -22,11 +21,21 @@ import static com.cauchymop.goblob.proto.PlayGameData.Score;
  */
 public class GoGameController implements Serializable {
 
+  /**
+   * Listener notified when the moves of the game change.
+   */
+  public interface Listener {
+    void onGameChanged(GoGameController gameController);
+  }
+
   transient GameDatas gameDatas;
+  private transient Listener listener;
 
   private final GoGame goGame;
   private GameData.Builder gameData;
   private GameData initialGameData;
+  // Territories of the dead stone marking, updated as the stones are toggled.
+  private transient TerritoryScorer territoryScorer;
 
   public GoGameController(GameDatas gameDatas, GameData gameData) {
     this.gameDatas = gameDatas;
@@ -43,10 +52,15 @@ public class GoGameController implements Serializable {
     return getMatchEndStatus().getScore();
   }
 
+  public void registerListener(Listener listener) {
+    this.listener = listener;
+  }
+
   public boolean undo() {
     if (canUndo()) {
       gameData.addRedo(0, removeLastMove());
       goGame.undo();
+      fireGameChanged();
       return true;
     }
     return false;
@@ -66,11 +80,18 @@ public class GoGameController implements Serializable {
       gameData.addMove(move);
       gameData.setTurn(getOpponentColor());
       checkForMatchEnd();
+      fireGameChanged();
       return true;
     }
     return false;
   }
 
+  private void fireGameChanged() {
+    if (listener != null) {
+      listener.onGameChanged(this);
+    }
+  }
+
   public GoPlayer getCurrentPlayer() {
     return gameDatas.getCurrentPlayer(gameData);
   }
@@ -124,6 +145,8 @@ public class GoGameController implements Serializable {
     } else {
       matchEndStatus.removeDeadStone(index);
     }
+    getTerritoryScorer().setDeadStone(goGame.getPos(position.getX(), position.getY()),
+        index == -1);
     matchEndStatus.setLastModifier(gameData.getTurn());
     matchEndStatus.setScore(calculateScore());
     return true;
@@ -168,9 +191,22 @@ public class GoGameController implements Serializable {
   }
 
   private Score calculateScore() {
-    ScoreGenerator scoreGenerator = new ScoreGenerator(goGame.getBoard(),
-        Sets.newHashSet(getDeadStones()), getGameConfiguration().getKomi());
-    return scoreGenerator.getScore();
+    return new ScoreGenerator(getTerritoryScorer(), getGameConfiguration().getKomi()).getScore();
+  }
+
+  /**
+   * Returns the scorer of the current board and dead stones, scoring them on the first call.
+   */
+  private TerritoryScorer getTerritoryScorer() {
+    if (territoryScorer == null) {
+      BitBoard deadStones = BitBoard.forBoardSize(goGame.getBoardSize());
+      for (Position position : getDeadStones()) {
+        deadStones.set(goGame.getPos(position.getX(), position.getY()));
+      }
+      territoryScorer = new TerritoryScorer(goGame.getBoardSize());
+      territoryScorer.score(goGame.getBoard(), deadStones);
+    }
+    return territoryScorer;
   }
 
   private void updateRedoForMove(Move move) {
@@ -187,6 +223,8 @@ public class GoGameController implements Serializable {
   private void checkForMatchEnd() {
     if (goGame.isGameEnd()) {
       gameData.setPhase(Phase.DEAD_STONE_MARKING);
+      gameData.getMatchEndStatusBuilder().clearDeadStone();
+      territoryScorer = null;
       Color lastModifier = GoBoard.getOpponent(goGame.getCurrentColor());
       gameData.getMatchEndStatusBuilder()
           .setLastModifier(lastModifier)
@@ -194,6 +232,25 @@ public class GoGameController implements Serializable {
     }
   }
 
+  /**
+   * Marks dead the stones suggested by {@link AiEngine#suggestDeadStones}, so that the players
+   * only have to fix the doubtful ones. Returns false, leaving the marking unchanged, if the game
+   * is not in the dead stone marking phase.
+   */
+  public boolean setSuggestedDeadStones(BitBoard deadStones) {
+    if (getPhase() != Phase.DEAD_STONE_MARKING) {
+      return false;
+    }
+    MatchEndStatus.Builder matchEndStatus = gameData.getMatchEndStatusBuilder().clearDeadStone();
+    int size = goGame.getBoardSize();
+    for (int pos = deadStones.nextSetBit(0); pos >= 0; pos = deadStones.nextSetBit(pos + 1)) {
+      matchEndStatus.addDeadStone(gameDatas.createPosition(pos % size, pos / size));
+    }
+    territoryScorer = null;
+    matchEndStatus.setScore(calculateScore());
+    return true;
+  }
+
   private int getPos(Move move) {
     switch (move.getType()) {
       case MOVE:
@@ -1,185 +1,695 @@
 package com.cauchymop.goblob.model;
 
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.cauchymop.goblob.proto.PlayGameData.Color;
 
 /**
  * Implementation of Monte-Carlo Tree Search.
+ * <p>
+ * A search runs within a {@link SearchBudget}, and can be stopped at any time with a
+ * {@link CancellationToken}: the move returned is the most visited one so far.
+ * <p>
+ * The search can run on several threads sharing the same tree, stored in a {@link NodeArena}, each
+ * of them playing on its own copy of the game. Node statistics are updated without locks, and a
+ * virtual loss is applied to the nodes being explored so that the threads spread over different
+ * branches.
+ * <p>
+ * As in MCTS-Solver, the nodes whose result is known are marked proven: a move ending the game
+ * or reaching a settled position, a move answered by a proven win, or a move whose answers are
+ * all proven losses. Proven nodes
+ * are not explored anymore, and the search stops as soon as the root is proven.
+ * <p>
+ * The progress and the {@link SearchStats} of a search are reported to a {@link SearchListener}.
  */
 public class MonteCarlo {
 
   private static final double EPSILON = 1e-6;
-  private static final double KOMI = 0.5;
   public static final double PASS_MALUS = 0.9;
   public static final double EYEFILLING_MALUS = 1.9;
 
-  private static Random random = new Random(0);
+  // Bound of the default arena capacity. At NodeArena.BYTES_PER_NODE (33) bytes a node, the
+  // arena takes about 8.6MB, a fraction of the smallest Android heaps. A full arena only stops
+  // the growth of the tree.
+  private static final int MAX_DEFAULT_NODES = 1 << 18;
+  // Nodes created by a searcher in a millisecond, above the ~200 of a desktop thread. Bigger boards
+  // have bigger expansions but slower playouts, so the rate barely depends on the board size.
+  private static final int NODES_PER_THREAD_MILLI = 256;
+  // Number of iterations between two checks that the best move can still be overtaken.
+  private static final int EARLY_STOP_PERIOD = 16;
+  private static final long PROGRESS_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
 
   public static int getBestMove(GoGame game, int iterations) {
-    int nbPos = game.getBoardSize() * game.getBoardSize() + 1;
-    // Root has the opponent color, so that the first move has the current color.
-    TreeNode root = new TreeNode(nbPos, GoBoard.getOpponent(game.getCurrentColor()));
-    for(int i = 0 ; i<iterations ; i++) {
-//      System.err.println("Iteration " + i);
-      root.runAndRestore(game);
+    return getBestMove(game, iterations, 1);
+  }
+
+  /**
+   * Returns the best move found after {@code iterations} playouts, shared by
+   * {@code threadCount} threads.
+   */
+  public static int getBestMove(GoGame game, int iterations, int threadCount) {
+    SearchConfig config = SearchConfig.newBuilder().setThreadCount(threadCount).build();
+    return search(game, SearchBudget.ofIterations(iterations), new CancellationToken(), config)
+        .getMove();
+  }
+
+  /**
+   * Searches the best move within the given budget, with a new arena.
+   */
+  public static SearchResult search(GoGame game, SearchBudget budget,
+      CancellationToken cancellationToken, SearchConfig config) {
+    return search(game, budget, cancellationToken, config, (SearchListener) null);
+  }
+
+  /**
+   * Searches the best move within the given budget, with a new arena, reporting its progress to
+   * {@code listener} unless it's null.
+   */
+  public static SearchResult search(GoGame game, SearchBudget budget,
+      CancellationToken cancellationToken, SearchConfig config, SearchListener listener) {
+    NodeArena arena = new NodeArena(getDefaultCapacity(game, budget, config));
+    return continueSearch(game, budget, cancellationToken, config, arena,
+        createTranspositionTable(config), listener, null);
+  }
+
+  /**
+   * Returns the number of nodes the search can create within the budget, up to
+   * {@link #MAX_DEFAULT_NODES}.
+   */
+  private static int getDefaultCapacity(GoGame game, SearchBudget budget, SearchConfig config) {
+    long maxNodes = MAX_DEFAULT_NODES;
+    if (budget.hasIterationLimit()) {
+      // Each iteration expands at most one node.
+      maxNodes = Math.min(maxNodes,
+          (long) budget.getMaxIterations() * (game.getPassValue() + 1) + 1);
     }
-    printScores(game, root);
-    return root.selectBestNode(game).move;
+    if (budget.hasTimeLimit()) {
+      long millis = Math.min(budget.getMaxTimeMillis(), MAX_DEFAULT_NODES);
+      maxNodes = Math.min(maxNodes, millis * config.getThreadCount() * NODES_PER_THREAD_MILLI + 1);
+    }
+    return (int) maxNodes;
+  }
+
+  /**
+   * Searches the best move with the threads of the config, until the budget is spent, the
+   * search is cancelled, or the best move can't be overtaken anymore. The search tree is stored
+   * in {@code arena}, which is cleared first.
+   */
+  public static SearchResult search(GoGame game, SearchBudget budget,
+      CancellationToken cancellationToken, SearchConfig config, NodeArena arena) {
+    arena.clear();
+    return continueSearch(game, budget, cancellationToken, config, arena,
+        createTranspositionTable(config), null, null);
+  }
+
+  private static TranspositionTable createTranspositionTable(SearchConfig config) {
+    return config.isTranspositionTableEnabled()
+        ? new TranspositionTable(config.getTranspositionTableSize()) : null;
   }
 
-  private static void printScores(GoGame game, TreeNode root) {
-    for (int i=0 ; i<game.getPassValue() ; i++) {
-      System.err.print(String.format("%3d ", (int)root.children[i].nVisits));
-      if (i%game.getBoardSize() == game.getBoardSize()-1) System.err.println("");
+  /**
+   * Searches like {@link #search}, but starting from the tree already in {@code arena}, which
+   * must have been built for the current position of the game. The statistics by position are
+   * shared in {@code table}, and the progress reported to {@code listener}, unless they are null.
+   * With several threads, the searchers run on {@code searcherExecutor}, which must have a thread
+   * per searcher, or on a pool created for the search if it's null.
+   */
+  static SearchResult continueSearch(GoGame game, SearchBudget budget,
+      CancellationToken cancellationToken, SearchConfig config, NodeArena arena,
+      TranspositionTable table, SearchListener listener, ExecutorService searcherExecutor) {
+    SearchControl control = new SearchControl(arena, table, budget, cancellationToken, listener);
+    if (config.getThreadCount() == 1) {
+      new Searcher(arena, table, game, control, config, createRandom(config, 0)).run();
+    } else if (searcherExecutor != null) {
+      runSearchers(arena, table, game, control, config, searcherExecutor);
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(config.getThreadCount());
+      try {
+        runSearchers(arena, table, game, control, config, executor);
+      } finally {
+        executor.shutdown();
+      }
     }
+    SearchResult result = control.getResult();
+    if (listener != null) {
+      listener.onSearchEnd(result);
+    }
+    return result;
   }
 
-  private static double rollOut(GoGame game) {
-    while(true) {
-//      System.err.println(TextBoard.toString(game.getBoard()));
-      if (game.isGameEnd()) {
-//        System.err.print(TextBoard.toString(game.getBoard()));
-        double gameValue = getGameValue(game);
-//        System.err.println(String.format("Value = %f\n", gameValue));
-        return gameValue;
+  private static void runSearchers(NodeArena arena, TranspositionTable table, GoGame game,
+      SearchControl control, SearchConfig config, ExecutorService executor) {
+    List<Future<?>> futures = Lists.newArrayList();
+    for (int i = 0; i < config.getThreadCount(); i++) {
+      futures.add(executor.submit(new Searcher(arena, table, game.copy(), control, config,
+          createRandom(config, i))));
+    }
+    for (Future<?> future : futures) {
+      Futures.getUnchecked(future);
+    }
+  }
+
+  /**
+   * Returns the random generator of a searcher, seeded by the seed of the config, if any, and the
+   * index of the searcher.
+   */
+  private static Random createRandom(SearchConfig config, int searcherIndex) {
+    return config.hasSeed() ? new Random(config.getSeed() + searcherIndex) : new Random();
+  }
+
+  private static int selectBestNode(NodeArena arena, TranspositionTable table, int parent,
+      GoGame game, Random random, SearchConfig config) {
+    int selected = NodeArena.NO_NODE;
+    double bestValue = -Double.MAX_VALUE;
+    // Only selected when all the other moves are invalid or lost too.
+    int provenLoss = NodeArena.NO_NODE;
+    int parentVisits = arena.getVisits(parent);
+    int firstChild = arena.getFirstChild(parent);
+    for (int node = firstChild; node < firstChild + arena.getChildCount(parent); node++) {
+      if (arena.isInvalid(node)) {
+        continue;
       }
-      Set<Integer> possibleMoves = game.getNonEyeFillingMoves();
-//      System.err.println("Moves: " + possibleMoves);
-      while(true) {
-        if (possibleMoves.isEmpty()) {
-          game.play(game.getPassValue());
-          break;
-        }
-        int move = Lists.newArrayList(possibleMoves).get(random.nextInt(possibleMoves.size()));
-        if (game.play(move)) {
-//          System.err.println("Rollout played " + move);
-          break;
-        }
-        possibleMoves.remove(move);
+      if (arena.isProvenWin(node)) {
+        return node;
+      }
+      if (arena.isProvenLoss(node)) {
+        provenLoss = node;
+        continue;
+      }
+      int move = arena.getMove(node);
+      int nodeVisits = arena.getVisits(node);
+      double meanValue = getMeanValue(arena, table, node);
+      double uctValue = random.nextDouble() * EPSILON;
+      if (config.isRaveEnabled()) {
+        uctValue += getRaveUctValue(arena, node, nodeVisits, meanValue, parentVisits,
+            config.getRaveEquivalence());
+      } else {
+        uctValue += getUctValue(nodeVisits, meanValue, parentVisits, game);
+      }
+      if (isPass(game, move) && !isPass(game, game.getLastMove())) {
+        uctValue -= PASS_MALUS;
+      }
+      if (!isPass(game, move) && game.getBoard().isEyeFilling(move, game.getCurrentColor())) {
+        uctValue -= EYEFILLING_MALUS;
+      }
+      if (uctValue > bestValue) {
+        selected = node;
+        bestValue = uctValue;
       }
     }
+    return selected == NodeArena.NO_NODE ? provenLoss : selected;
   }
 
-  private static double getGameValue(GoGame game) {
-    double score = game.getBoard().getScore() - KOMI;
-    return score > 0 ? 1 : -1;
+  /**
+   * Returns the mean value of the node, from the statistics of its position in the table when
+   * they have more visits than the node.
+   */
+  private static double getMeanValue(NodeArena arena, TranspositionTable table, int node) {
+    int visits = arena.getVisits(node);
+    float value = arena.getValue(node);
+    long key = arena.getPositionKey(node);
+    if (table != null && key != 0) {
+      int entry = table.find(key);
+      if (entry != TranspositionTable.NO_ENTRY && table.getVisits(entry) > visits) {
+        visits = table.getVisits(entry);
+        value = table.getValue(entry);
+      }
+    }
+    return visits == 0 ? 0 : value / visits;
+  }
+
+  private static double getUctValue(int nodeVisits, double meanValue, int parentVisits,
+      GoGame game) {
+    double uctValue = 0;
+    if (game.getMoveCount() == 0 && nodeVisits < 4) {
+      uctValue += 100;
+    }
+    if (nodeVisits == 1) {
+      uctValue += 100;
+    }
+    if (nodeVisits > 0) {
+      uctValue += meanValue + Math.sqrt(Math.log(parentVisits+1) / nodeVisits);
+    }
+    return uctValue;
   }
 
-  private static class TreeNode {
-    private TreeNode[] children;
-    private final Color stoneColor;
-    private int move;
-    private final int nbPos;
-    private double nVisits;
-    private double totValue;
-    private boolean isInvalid;
+  /**
+   * Returns the value of the node blended with its all-moves-as-first value, which is known much
+   * earlier, plus an exploration term. Unvisited nodes are ranked by their RAVE value alone.
+   */
+  private static double getRaveUctValue(NodeArena arena, int node, int nodeVisits,
+      double meanValue, int parentVisits, int raveEquivalence) {
+    int raveVisits = arena.getRaveVisits(node);
+    double value = meanValue;
+    if (raveVisits > 0) {
+      double raveValue = arena.getRaveValue(node) / raveVisits;
+      double beta = Math.sqrt(raveEquivalence / (3.0 * nodeVisits + raveEquivalence));
+      value = beta * raveValue + (1 - beta) * value;
+    }
+    return value + Math.sqrt(Math.log(parentVisits + 1) / (nodeVisits + 1));
+  }
+
+  private static boolean isPass(GoGame game, int move) {
+    return move == game.getPassValue();
+  }
+
+  /**
+   * Returns whether all the valid children of the node are proven losses for the player to move.
+   */
+  private static boolean areAllChildrenLost(NodeArena arena, int parent) {
+    int firstChild = arena.getFirstChild(parent);
+    for (int node = firstChild; node < firstChild + arena.getChildCount(parent); node++) {
+      if (!arena.isInvalid(node) && !arena.isProvenLoss(node)) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-    private TreeNode(int nbPos, Color stoneColor) {
-      this.nbPos = nbPos;
-      this.stoneColor = stoneColor;
+  /**
+   * Returns the valid child of the node proven to win, or else the one with the most visits, or
+   * {@link NodeArena#NO_NODE} if the node is not expanded.
+   */
+  private static int getBestChild(NodeArena arena, int parent) {
+    int firstChild = arena.getFirstChild(parent);
+    for (int node = firstChild; node < firstChild + arena.getChildCount(parent); node++) {
+      if (!arena.isInvalid(node) && arena.isProvenWin(node)) {
+        return node;
+      }
     }
+    return getMostVisitedChild(arena, parent);
+  }
 
-    private boolean alreadyVisited() {
-      return nVisits > 0;
+  /**
+   * Returns the valid child of the node with the most visits, or {@link NodeArena#NO_NODE} if
+   * the node is not expanded.
+   */
+  private static int getMostVisitedChild(NodeArena arena, int parent) {
+    int selected = NodeArena.NO_NODE;
+    int firstChild = arena.getFirstChild(parent);
+    for (int node = firstChild; node < firstChild + arena.getChildCount(parent); node++) {
+      if (!arena.isInvalid(node)
+          && (selected == NodeArena.NO_NODE || arena.getVisits(node) > arena.getVisits(selected))) {
+        selected = node;
+      }
     }
+    return selected;
+  }
 
-    private void updateStats(double value) {
-      nVisits++;
-      totValue += stoneColor == Color.BLACK ? value : -value;
+  /**
+   * Shares the budget of a search between its threads, and decides when it stops.
+   */
+  private static class SearchControl {
+    private final NodeArena arena;
+    private final TranspositionTable table;
+    private final SearchBudget budget;
+    private final CancellationToken cancellationToken;
+    private final SearchListener listener;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong lastProgressNanos = new AtomicLong(startNanos);
+    private final AtomicInteger startedIterations = new AtomicInteger();
+    private final AtomicInteger completedIterations = new AtomicInteger();
+    private final AtomicReference<SearchResult.StopReason> stopReason = new AtomicReference<>();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong totalDepth = new AtomicLong();
+    private final AtomicLong selectionNanos = new AtomicLong();
+    private final AtomicLong rolloutNanos = new AtomicLong();
+
+    private SearchControl(NodeArena arena, TranspositionTable table, SearchBudget budget,
+        CancellationToken cancellationToken, SearchListener listener) {
+      this.arena = arena;
+      this.table = table;
+      this.budget = budget;
+      this.cancellationToken = cancellationToken;
+      this.listener = listener;
     }
 
-    private boolean isLeaf() {
-      return children == null;
+    /**
+     * Returns whether a new iteration can start.
+     */
+    private boolean startIteration() {
+      if (stopReason.get() != null) {
+        return false;
+      }
+      if (cancellationToken.isCancelled()) {
+        return stop(SearchResult.StopReason.CANCELLED);
+      }
+      if (arena.isProven(NodeArena.ROOT)) {
+        return stop(SearchResult.StopReason.RESULT_PROVEN);
+      }
+      int iteration = startedIterations.getAndIncrement();
+      long elapsedNanos = System.nanoTime() - startNanos;
+      if (iteration >= budget.getMaxIterations()
+          || (budget.hasTimeLimit() && elapsedNanos >= getMaxTimeNanos())) {
+        return stop(SearchResult.StopReason.BUDGET_EXHAUSTED);
+      }
+      if (iteration > 0 && iteration % EARLY_STOP_PERIOD == 0
+          && isBestMoveSettled(iteration, elapsedNanos)) {
+        return stop(SearchResult.StopReason.BEST_MOVE_SETTLED);
+      }
+      if (listener != null) {
+        reportProgress();
+      }
+      return true;
     }
 
-    private void expand() {
-      children = new TreeNode[nbPos];
-      for (int i=0; i< nbPos; i++) {
-        children[i] = new TreeNode(nbPos, GoBoard.getOpponent(stoneColor));
-        children[i].move = i;
+    /**
+     * Reports the progress if nobody did for a while.
+     */
+    private void reportProgress() {
+      long now = System.nanoTime();
+      long last = lastProgressNanos.get();
+      if (now - last >= PROGRESS_PERIOD_NANOS && lastProgressNanos.compareAndSet(last, now)) {
+        listener.onProgress(getResult());
       }
     }
 
-    private TreeNode selectBestNode(GoGame game) {
-      TreeNode selected = null;
-      double bestValue = -Double.MAX_VALUE;
-      for (TreeNode node : children) {
-        if (node.isInvalid) {
-          continue;
-        }
-        double uctValue = random.nextDouble() * EPSILON;
-        if (game.getMoveHistory().size() == 0 && node.nVisits < 4) {
-          uctValue += 100;
-        }
-        if (node.nVisits == 1) {
-          uctValue += 100;
-        }
-        if (node.nVisits > 0) {
-          uctValue += node.totValue / node.nVisits
-              + Math.sqrt(Math.log(nVisits+1) / node.nVisits);
-        }
-        if (isPass(node.move) && !isPass(game.getLastMove())) {
-          uctValue -= PASS_MALUS;
+    /**
+     * Records the end of an iteration which selected {@code depth} nodes of the tree.
+     */
+    private void endIteration(int depth, long iterationSelectionNanos,
+        long iterationRolloutNanos) {
+      completedIterations.incrementAndGet();
+      totalDepth.addAndGet(depth);
+      int currentMaxDepth = maxDepth.get();
+      while (depth > currentMaxDepth && !maxDepth.compareAndSet(currentMaxDepth, depth)) {
+        currentMaxDepth = maxDepth.get();
+      }
+      selectionNanos.addAndGet(iterationSelectionNanos);
+      rolloutNanos.addAndGet(iterationRolloutNanos);
+    }
+
+    private boolean stop(SearchResult.StopReason reason) {
+      stopReason.compareAndSet(null, reason);
+      return false;
+    }
+
+    private long getMaxTimeNanos() {
+      return TimeUnit.MILLISECONDS.toNanos(budget.getMaxTimeMillis());
+    }
+
+    /**
+     * Returns whether the second most visited move can't reach the visits of the most visited one
+     * within the remaining budget.
+     */
+    private boolean isBestMoveSettled(int iteration, long elapsedNanos) {
+      long remainingIterations = Long.MAX_VALUE;
+      if (budget.hasIterationLimit()) {
+        remainingIterations = budget.getMaxIterations() - iteration;
+      }
+      if (budget.hasTimeLimit() && elapsedNanos > 0) {
+        double iterationsPerNano = (double) iteration / elapsedNanos;
+        remainingIterations = Math.min(remainingIterations,
+            (long) Math.ceil(iterationsPerNano * (getMaxTimeNanos() - elapsedNanos)));
+      }
+      if (remainingIterations == Long.MAX_VALUE) {
+        return false;
+      }
+      int bestVisits = 0;
+      int secondVisits = 0;
+      int firstChild = arena.getFirstChild(NodeArena.ROOT);
+      for (int node = firstChild; node < firstChild + arena.getChildCount(NodeArena.ROOT); node++) {
+        int visits = arena.getVisits(node);
+        if (visits > bestVisits) {
+          secondVisits = bestVisits;
+          bestVisits = visits;
+        } else if (visits > secondVisits) {
+          secondVisits = visits;
         }
-        if (!isPass(node.move) && game.getBoard().isEyeFilling(node.move, game.getCurrentColor())) {
-          uctValue -= EYEFILLING_MALUS;
+      }
+      return bestVisits - secondVisits > remainingIterations;
+    }
+
+    private SearchResult getResult() {
+      int node = getBestChild(arena, NodeArena.ROOT);
+      int move = node == NodeArena.NO_NODE ? GoGame.NO_MOVE : arena.getMove(node);
+      int visits = node == NodeArena.NO_NODE ? 0 : arena.getVisits(node);
+      return new SearchResult(move, visits, getWinRate(node), stopReason.get(), getStats());
+    }
+
+    private SearchStats getStats() {
+      int iterations = completedIterations.get();
+      long memoryBytes = arena.getMemoryBytes() + (table == null ? 0 : table.getMemoryBytes());
+      return new SearchStats(iterations, System.nanoTime() - startNanos, arena.size(),
+          maxDepth.get(), iterations == 0 ? 0 : (double) totalDepth.get() / iterations,
+          memoryBytes, selectionNanos.get(), rolloutNanos.get(), getPrincipalVariation(),
+          getMoveStats());
+    }
+
+    private int[] getPrincipalVariation() {
+      List<Integer> moves = Lists.newArrayList();
+      int node = getBestChild(arena, NodeArena.ROOT);
+      while (node != NodeArena.NO_NODE && arena.getVisits(node) > 0) {
+        moves.add(arena.getMove(node));
+        node = getBestChild(arena, node);
+      }
+      return Ints.toArray(moves);
+    }
+
+    private List<SearchStats.MoveStats> getMoveStats() {
+      List<SearchStats.MoveStats> moveStats = Lists.newArrayList();
+      int firstChild = arena.getFirstChild(NodeArena.ROOT);
+      for (int node = firstChild; node < firstChild + arena.getChildCount(NodeArena.ROOT); node++) {
+        int visits = arena.getVisits(node);
+        if (visits > 0 && !arena.isInvalid(node)) {
+          moveStats.add(new SearchStats.MoveStats(arena.getMove(node), visits, getWinRate(node)));
         }
-        if (uctValue > bestValue) {
-          selected = node;
-          bestValue = uctValue;
+      }
+      Collections.sort(moveStats, new Comparator<SearchStats.MoveStats>() {
+        @Override
+        public int compare(SearchStats.MoveStats first, SearchStats.MoveStats second) {
+          return Ints.compare(second.getVisits(), first.getVisits());
         }
+      });
+      return moveStats;
+    }
+
+    private double getWinRate(int node) {
+      if (node != NodeArena.NO_NODE && arena.isProven(node)) {
+        return arena.isProvenWin(node) ? 1 : 0;
       }
-      return selected;
+      int visits = node == NodeArena.NO_NODE ? 0 : arena.getVisits(node);
+      // Values are between -1 and 1, for the player of the move.
+      return visits == 0 ? 0.5 : (1 + arena.getValue(node) / visits) / 2;
     }
+  }
 
-    private boolean isPass(int move) {
-      return move == nbPos - 1;
+  /**
+   * Runs iterations on its own game until the search stops.
+   */
+  private static class Searcher implements Runnable {
+    private final NodeArena arena;
+    private final TranspositionTable table;
+    private final GoGame game;
+    private final SearchControl control;
+    private final SearchConfig config;
+    private final Random random;
+    private final Playout playout;
+    private final int[] moves;
+    // Nodes where a child was selected during the current iteration, with the index of its move.
+    private int[] pathNodes = new int[64];
+    private int[] pathMoveIndexes = new int[64];
+    private int pathLength;
+    // Stamps of the moves played by each player from some point of the iteration: the moves of
+    // the player to move at the root first, then the ones of the opponent.
+    private final int[] playedStamps;
+    private int stamp;
+    private long iterationRolloutNanos;
+
+    private Searcher(NodeArena arena, TranspositionTable table, GoGame game, SearchControl control,
+        SearchConfig config, Random random) {
+      this.arena = arena;
+      this.table = table;
+      this.game = game;
+      this.control = control;
+      this.config = config;
+      this.random = random;
+      playout = new Playout(random, config);
+      moves = new int[game.getPassValue() + 1];
+      playedStamps = new int[2 * game.getPassValue()];
     }
 
-    public double run(GoGame game) {
-      double value;
+    @Override
+    public void run() {
+      while (control.startIteration()) {
+        long startNanos = System.nanoTime();
+        iterationRolloutNanos = 0;
+        runAndRestore();
+        long iterationNanos = System.nanoTime() - startNanos;
+        control.endIteration(pathLength, iterationNanos - iterationRolloutNanos,
+            iterationRolloutNanos);
+      }
+    }
 
-      if(game.isGameEnd()) {
-        return rollOut(game);
+    private void runAndRestore() {
+      int originalGamePosition = game.getMoveCount();
+      Color rootPlayer = game.getCurrentColor();
+      pathLength = 0;
+      arena.addVirtualLoss(NodeArena.ROOT);
+      int value = run(NodeArena.ROOT);
+      arena.addValue(NodeArena.ROOT, (rootPlayer == Color.BLACK ? -value : value) + 1);
+      if (config.isRaveEnabled()) {
+        updateRave(originalGamePosition, rootPlayer, value);
       }
+      while(game.getMoveCount() > originalGamePosition) {
+        game.undo();
+      }
+    }
 
-      TreeNode node = selectAndPlay(game);
-//      System.err.println("Run played " + node.move);
-      if (node.alreadyVisited()) {
-        value = node.run(game);
+    /**
+     * Plays from the given node to the end of the game, and returns the value of the game for
+     * black.
+     */
+    private int run(int node) {
+      if (game.isGameEnd()) {
+        return rollOut();
+      }
+      // When the arena is full or another thread is expanding the node, it stays a leaf.
+      if (arena.getFirstChild(node) == NodeArena.NO_NODE && !expand(node)) {
+        return rollOut();
+      }
+
+      Color player = game.getCurrentColor();
+      addToPath(node);
+      int child = selectAndPlay(node);
+      long key = 0;
+      if (table != null) {
+        key = TranspositionTable.getKey(game);
+        arena.setPositionKey(child, key);
+      }
+      boolean finalValue = game.isGameEnd();
+      int value;
+      if (arena.isProven(child)) {
+        arena.addVirtualLoss(child);
+        boolean blackWins = arena.isProvenWin(child) == (player == Color.BLACK);
+        value = blackWins ? 1 : -1;
+      } else if (arena.addVirtualLoss(child) > 0) {
+        value = run(child);
       } else {
-        value = rollOut(game);
+        value = rollOut();
+        finalValue = playout.isLastScoreFinal();
       }
-      node.updateStats(value);
+      int playerValue = player == Color.BLACK ? value : -value;
+      arena.addValue(child, playerValue + 1);
+      if (table != null) {
+        table.addResult(key, playerValue);
+      }
+      if (finalValue) {
+        arena.setProven(child, playerValue > 0);
+      }
+      updateProof(node, child);
 
       return value;
     }
 
-    private TreeNode selectAndPlay(GoGame game) {
-      if (isLeaf()) {
-        expand();
+    /**
+     * Proves the node from its child: the player of the node loses if the child is a proven win
+     * for the opponent, and wins if all the answers of the opponent are proven losses.
+     */
+    private void updateProof(int node, int child) {
+      if (arena.isProvenWin(child)) {
+        arena.setProven(node, false);
+      } else if (arena.isProvenLoss(child) && areAllChildrenLost(arena, node)) {
+        arena.setProven(node, true);
+      }
+    }
+
+    private void addToPath(int node) {
+      if (pathLength == pathNodes.length) {
+        pathNodes = Arrays.copyOf(pathNodes, 2 * pathLength);
+        pathMoveIndexes = Arrays.copyOf(pathMoveIndexes, 2 * pathLength);
+      }
+      pathNodes[pathLength] = node;
+      pathMoveIndexes[pathLength] = game.getMoveCount();
+      pathLength++;
+    }
+
+    /**
+     * Updates the all-moves-as-first statistics of the children of the nodes of the path, for
+     * the moves played later in the iteration by the same player, which is now at its end.
+     */
+    private void updateRave(int originalGamePosition, Color rootPlayer, int value) {
+      stamp++;
+      int pathIndex = pathLength - 1;
+      for (int index = game.getMoveCount() - 1; index >= originalGamePosition && pathIndex >= 0;
+          index--) {
+        int playerOffset = getPlayerOffset(index - originalGamePosition);
+        int move = game.getMove(index);
+        if (move != game.getPassValue()) {
+          playedStamps[playerOffset + move] = stamp;
+        }
+        if (pathMoveIndexes[pathIndex] == index) {
+          Color player = playerOffset == 0 ? rootPlayer : GoBoard.getOpponent(rootPlayer);
+          updateRaveChildren(pathNodes[pathIndex], playerOffset,
+              player == Color.BLACK ? value : -value);
+          pathIndex--;
+        }
+      }
+    }
+
+    private void updateRaveChildren(int node, int playerOffset, int value) {
+      int firstChild = arena.getFirstChild(node);
+      for (int child = firstChild; child < firstChild + arena.getChildCount(node); child++) {
+        int move = arena.getMove(child);
+        if (move != game.getPassValue() && playedStamps[playerOffset + move] == stamp) {
+          arena.addRaveResult(child, value);
+        }
+      }
+    }
+
+    private int getPlayerOffset(int movesSinceRoot) {
+      return (movesSinceRoot % 2) * game.getPassValue();
+    }
+
+    /**
+     * Expands the node with a child for each empty position and for pass.
+     */
+    private boolean expand(int node) {
+      GoBoard board = game.getBoard();
+      int moveCount = 0;
+      for (int i = 0; i < board.getEmptyCount(); i++) {
+        moves[moveCount++] = board.getEmptyPosition(i);
       }
-      TreeNode node;
+      moves[moveCount++] = game.getPassValue();
+      return arena.expand(node, moves, moveCount);
+    }
+
+    private int selectAndPlay(int node) {
       while(true) {
-        node = selectBestNode(game);
-        if(game.play(node.move)) {
-          return node;
+        int child = selectBestNode(arena, table, node, game, random, config);
+        if(game.play(arena.getMove(child))) {
+          return child;
         } else {
-          node.isInvalid = true;
+          arena.setInvalid(child);
         }
       }
     }
 
-    public void runAndRestore(GoGame game) {
-      int originalGamePosition = game.getMoveHistory().size();
-      run(game);
-      while(game.getMoveHistory().size() > originalGamePosition) {
-        game.undo();
-      }
+    private int rollOut() {
+      long startNanos = System.nanoTime();
+      int value = getGameValue(playout.run(game));
+      iterationRolloutNanos += System.nanoTime() - startNanos;
+      return value;
+    }
+
+    private int getGameValue(int blackScore) {
+      double score = blackScore - config.getKomi();
+      return score > 0 ? 1 : -1;
     }
   }
 }
@@ -0,0 +1,275 @@
+package com.cauchymop.goblob.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated storage for the nodes of a {@link MonteCarlo} search tree.
+ * <p>
+ * Nodes are indexes in parallel primitive arrays, and the children of a node are allocated
+ * together as a contiguous range. Allocation is a lock free bump of the arena size, so the memory
+ * used by a search is bounded by the capacity and no object is created per node. When the arena
+ * is full, nodes are not expanded anymore and the search goes on from the existing leaves.
+ * <p>
+ * Statistics and expansions are safe to update from several threads. The flags are not: an
+ * update lost in a race only means that the flag is set again later.
+ */
+public class NodeArena {
+
+  public static final int NO_NODE = -1;
+  public static final int ROOT = 0;
+  // Bytes of the statistics, links, move and flags of a node.
+  public static final int BYTES_PER_NODE = 33;
+
+  private static final int NOT_EXPANDED = -1;
+  private static final int EXPANDING = -2;
+  private static final byte INVALID = 1;
+  // The player who played the move of the node wins, or loses, whatever the following moves.
+  private static final byte PROVEN_WIN = 2;
+  private static final byte PROVEN_LOSS = 4;
+
+  private final int capacity;
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicIntegerArray visits;
+  // Float bits of the total value of each node, for the player who played its move.
+  private final AtomicIntegerArray valueBits;
+  // All-moves-as-first statistics: the games where the move was played later by the same player.
+  private final AtomicIntegerArray raveVisits;
+  private final AtomicIntegerArray raveValueBits;
+  // Key in the transposition table of the position reached by each node, or 0 if unknown.
+  private final AtomicLongArray positionKey;
+  private final AtomicIntegerArray firstChild;
+  private final short[] childCount;
+  private final short[] move;
+  private final byte[] flags;
+  // Work buffer of copySubtree, giving the source node of each copied node.
+  private int[] sourceNodes;
+
+  public NodeArena(int capacity) {
+    this.capacity = capacity;
+    visits = new AtomicIntegerArray(capacity);
+    valueBits = new AtomicIntegerArray(capacity);
+    raveVisits = new AtomicIntegerArray(capacity);
+    raveValueBits = new AtomicIntegerArray(capacity);
+    positionKey = new AtomicLongArray(capacity);
+    firstChild = new AtomicIntegerArray(capacity);
+    childCount = new short[capacity];
+    move = new short[capacity];
+    flags = new byte[capacity];
+    clear();
+  }
+
+  /**
+   * Removes all the nodes but a new root.
+   */
+  public void clear() {
+    size.set(1);
+    initNode(ROOT, GoGame.NO_MOVE);
+  }
+
+  private void initNode(int node, int nodeMove) {
+    visits.set(node, 0);
+    valueBits.set(node, Float.floatToIntBits(0f));
+    raveVisits.set(node, 0);
+    raveValueBits.set(node, Float.floatToIntBits(0f));
+    positionKey.set(node, 0);
+    childCount[node] = 0;
+    move[node] = (short) nodeMove;
+    flags[node] = 0;
+    firstChild.set(node, NOT_EXPANDED);
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the memory used by the nodes, which is allocated upfront for the whole capacity.
+   */
+  public long getMemoryBytes() {
+    return (long) capacity * BYTES_PER_NODE;
+  }
+
+  public int size() {
+    return Math.min(size.get(), capacity);
+  }
+
+  public int getMove(int node) {
+    return move[node];
+  }
+
+  public int getVisits(int node) {
+    return visits.get(node);
+  }
+
+  public float getValue(int node) {
+    return Float.intBitsToFloat(valueBits.get(node));
+  }
+
+  public boolean isInvalid(int node) {
+    return (flags[node] & INVALID) != 0;
+  }
+
+  public void setInvalid(int node) {
+    flags[node] |= INVALID;
+  }
+
+  /**
+   * Returns whether the player who played the move of the node is proven to win.
+   */
+  public boolean isProvenWin(int node) {
+    return (flags[node] & PROVEN_WIN) != 0;
+  }
+
+  /**
+   * Returns whether the player who played the move of the node is proven to lose.
+   */
+  public boolean isProvenLoss(int node) {
+    return (flags[node] & PROVEN_LOSS) != 0;
+  }
+
+  public boolean isProven(int node) {
+    return (flags[node] & (PROVEN_WIN | PROVEN_LOSS)) != 0;
+  }
+
+  public void setProven(int node, boolean win) {
+    flags[node] |= win ? PROVEN_WIN : PROVEN_LOSS;
+  }
+
+  /**
+   * Counts a visit and a virtual loss, and returns the number of visits before this one. The
+   * virtual loss must be replaced by the value of the visit with {@link #addValue} once known.
+   */
+  public int addVirtualLoss(int node) {
+    addValue(node, -1);
+    return visits.getAndIncrement(node);
+  }
+
+  public void addValue(int node, float delta) {
+    addFloat(valueBits, node, delta);
+  }
+
+  public long getPositionKey(int node) {
+    return positionKey.get(node);
+  }
+
+  public void setPositionKey(int node, long key) {
+    positionKey.set(node, key);
+  }
+
+  public int getRaveVisits(int node) {
+    return raveVisits.get(node);
+  }
+
+  public float getRaveValue(int node) {
+    return Float.intBitsToFloat(raveValueBits.get(node));
+  }
+
+  public void addRaveResult(int node, float value) {
+    raveVisits.incrementAndGet(node);
+    addFloat(raveValueBits, node, value);
+  }
+
+  private static void addFloat(AtomicIntegerArray floatBits, int index, float delta) {
+    while (true) {
+      int bits = floatBits.get(index);
+      int newBits = Float.floatToIntBits(Float.intBitsToFloat(bits) + delta);
+      if (floatBits.compareAndSet(index, bits, newBits)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the first child of the node, or {@link #NO_NODE} if it's not expanded yet.
+   */
+  public int getFirstChild(int node) {
+    int first = firstChild.get(node);
+    return first < 0 ? NO_NODE : first;
+  }
+
+  public int getChildCount(int node) {
+    return getFirstChild(node) == NO_NODE ? 0 : childCount[node];
+  }
+
+  /**
+   * Creates one child per move for a node which has no children. Returns false if another thread
+   * is already expanding the node or if the arena is full.
+   */
+  public boolean expand(int node, int[] moves, int moveCount) {
+    if (size.get() + moveCount > capacity
+        || !firstChild.compareAndSet(node, NOT_EXPANDED, EXPANDING)) {
+      return false;
+    }
+    int first = size.getAndAdd(moveCount);
+    if (first + moveCount > capacity) {
+      firstChild.set(node, NOT_EXPANDED);
+      return false;
+    }
+    for (int i = 0; i < moveCount; i++) {
+      initNode(first + i, moves[i]);
+    }
+    childCount[node] = (short) moveCount;
+    // Publishes the children to the other threads.
+    firstChild.set(node, first);
+    return true;
+  }
+
+  /**
+   * Returns the child of the node playing the given move, or {@link #NO_NODE} if there is none.
+   */
+  public int findChild(int node, int childMove) {
+    int first = getFirstChild(node);
+    for (int child = first; child < first + getChildCount(node); child++) {
+      if (move[child] == childMove) {
+        return child;
+      }
+    }
+    return NO_NODE;
+  }
+
+  /**
+   * Replaces the tree of this arena by a copy of the subtree of {@code source} under
+   * {@code sourceNode}, which becomes the root. The nodes of the subtree are copied in breadth
+   * first order, so the nodes outside the subtree are dropped. Nodes whose children don't fit
+   * are left unexpanded.
+   * <p>
+   * Neither arena may be used by a search during the copy.
+   */
+  public void copySubtree(NodeArena source, int sourceNode) {
+    if (sourceNodes == null) {
+      sourceNodes = new int[capacity];
+    }
+    sourceNodes[ROOT] = sourceNode;
+    int copySize = 1;
+    for (int node = 0; node < copySize; node++) {
+      int sourceFirst = source.getFirstChild(sourceNodes[node]);
+      int sourceChildCount = source.getChildCount(sourceNodes[node]);
+      copyStats(source, sourceNodes[node], node);
+      if (sourceChildCount == 0 || copySize + sourceChildCount > capacity) {
+        continue;
+      }
+      for (int i = 0; i < sourceChildCount; i++) {
+        sourceNodes[copySize + i] = sourceFirst + i;
+      }
+      childCount[node] = (short) sourceChildCount;
+      firstChild.set(node, copySize);
+      copySize += sourceChildCount;
+    }
+    move[ROOT] = GoGame.NO_MOVE;
+    size.set(copySize);
+  }
+
+  private void copyStats(NodeArena source, int sourceNode, int node) {
+    visits.set(node, source.visits.get(sourceNode));
+    valueBits.set(node, source.valueBits.get(sourceNode));
+    raveVisits.set(node, source.raveVisits.get(sourceNode));
+    raveValueBits.set(node, source.raveValueBits.get(sourceNode));
+    positionKey.set(node, source.positionKey.get(sourceNode));
+    move[node] = source.move[sourceNode];
+    flags[node] = source.flags[sourceNode];
+    childCount[node] = 0;
+    firstChild.set(node, NOT_EXPANDED);
+  }
+}
@@ -0,0 +1,172 @@
+package com.cauchymop.goblob.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Color;
+
+/**
+ * Estimates who owns each point of a finished game, by playing random playouts to the end from
+ * its final position, so that the dead stones can be suggested to the players (see
+ * {@link AiEngine#suggestDeadStones}).
+ * <p>
+ * The random playouts never fill their own eyes, so the live groups survive them while the dead
+ * ones get captured. The ownership of each point is accumulated in primitive arrays, and the
+ * chains owned by the opponent in most of the playouts are reported dead.
+ * <p>
+ * The arrays and the neighbors of each position are only allocated when the board size changes.
+ * An instance must only be used by one thread at a time.
+ */
+public class OwnershipEstimator {
+
+  public static final int DEFAULT_PLAYOUTS = 100;
+  /**
+   * Share of the playouts at the end of which the opponent must own a chain for it to be dead.
+   */
+  public static final double DEAD_SHARE = 0.8;
+
+  private static final SearchConfig PLAYOUT_CONFIG = SearchConfig.newBuilder()
+      .setMercyThreshold(0)
+      .setUnconditionalLifeCheck(false)
+      .build();
+
+  private static final int NONE = -1;
+
+  private final Playout playout;
+  private int size;
+  private int playoutCount;
+  // The 4 neighbors of each position, NONE when off board.
+  private int[] neighbors;
+  // Number of playouts at the end of which each point was owned by black, or by white.
+  private int[] blackOwned = new int[0];
+  private int[] whiteOwned = new int[0];
+  private boolean[] visited;
+  private int[] chain;
+  private GoBoard board;
+
+  public OwnershipEstimator(Random random) {
+    playout = new Playout(random, PLAYOUT_CONFIG);
+  }
+
+  /**
+   * Plays {@code playouts} random playouts from the position of the game, which is left
+   * unchanged.
+   */
+  public void estimate(GoGame game, int playouts) {
+    if (game.getBoardSize() != size) {
+      setSize(game.getBoardSize());
+    }
+    playoutCount = playouts;
+    Arrays.fill(blackOwned, 0);
+    Arrays.fill(whiteOwned, 0);
+    board = game.getBoard();
+    GoGame playoutGame = game.copy();
+    // The game ended with two passes: the playouts resume it before the last one.
+    if (playoutGame.isGameEnd()) {
+      playoutGame.undo();
+    }
+    int startMoveCount = playoutGame.getMoveCount();
+    for (int i = 0; i < playouts; i++) {
+      playout.run(playoutGame);
+      addOwnership(playoutGame.getBoard());
+      while (playoutGame.getMoveCount() > startMoveCount) {
+        playoutGame.undo();
+      }
+    }
+  }
+
+  private void setSize(int size) {
+    this.size = size;
+    int numberOfPositions = size * size;
+    neighbors = new int[4 * numberOfPositions];
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      int x = pos % size;
+      int y = pos / size;
+      neighbors[4 * pos] = y > 0 ? pos - size : NONE;
+      neighbors[4 * pos + 1] = x > 0 ? pos - 1 : NONE;
+      neighbors[4 * pos + 2] = x < size - 1 ? pos + 1 : NONE;
+      neighbors[4 * pos + 3] = y < size - 1 ? pos + size : NONE;
+    }
+    blackOwned = new int[numberOfPositions];
+    whiteOwned = new int[numberOfPositions];
+    visited = new boolean[numberOfPositions];
+    chain = new int[numberOfPositions];
+  }
+
+  /**
+   * Counts the stones and the eyes of the finished playout for their color.
+   */
+  private void addOwnership(GoBoard playoutBoard) {
+    for (int pos = 0; pos < size * size; pos++) {
+      Color owner = playoutBoard.getColor(pos);
+      if (owner == null) {
+        owner = getEyeColor(playoutBoard, pos);
+      }
+      if (owner == Color.BLACK) {
+        blackOwned[pos]++;
+      } else if (owner == Color.WHITE) {
+        whiteOwned[pos]++;
+      }
+    }
+  }
+
+  /**
+   * Returns the color of all the stones around an empty point, or null if there are both colors.
+   */
+  private Color getEyeColor(GoBoard playoutBoard, int pos) {
+    boolean black = false;
+    boolean white = false;
+    for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+      int neighbor = neighbors[i];
+      if (neighbor != NONE) {
+        Color color = playoutBoard.getColor(neighbor);
+        black |= color == Color.BLACK;
+        white |= color == Color.WHITE;
+      }
+    }
+    return black == white ? null : black ? Color.BLACK : Color.WHITE;
+  }
+
+  /**
+   * Returns the ownership of the point, from -1 when white always owns it to 1 when black does.
+   */
+  public double getOwnership(int pos) {
+    return (double) (blackOwned[pos] - whiteOwned[pos]) / playoutCount;
+  }
+
+  /**
+   * Returns the stones of the estimated position whose chain is owned by the opponent at the end
+   * of at least {@link #DEAD_SHARE} of the playouts.
+   */
+  public BitBoard getDeadStones() {
+    BitBoard deadStones = BitBoard.forBoardSize(size);
+    Arrays.fill(visited, false);
+    for (int start = 0; start < size * size; start++) {
+      Color color = board.getColor(start);
+      if (color == null || visited[start]) {
+        continue;
+      }
+      int chainSize = 0;
+      long opponentOwned = 0;
+      visited[start] = true;
+      chain[chainSize++] = start;
+      for (int next = 0; next < chainSize; next++) {
+        int pos = chain[next];
+        opponentOwned += color == Color.BLACK ? whiteOwned[pos] : blackOwned[pos];
+        for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+          int neighbor = neighbors[i];
+          if (neighbor != NONE && !visited[neighbor] && board.getColor(neighbor) == color) {
+            visited[neighbor] = true;
+            chain[chainSize++] = neighbor;
+          }
+        }
+      }
+      if (opponentOwned >= DEAD_SHARE * playoutCount * chainSize) {
+        for (int i = 0; i < chainSize; i++) {
+          deadStones.set(chain[i]);
+        }
+      }
+    }
+    return deadStones;
+  }
+}
@@ -0,0 +1,174 @@
+package com.cauchymop.goblob.model;
+
+import java.util.Arrays;
+
+/**
+ * Weights of the moves of the random playouts, according to the 3x3 pattern around them (see
+ * {@link GoBoard#getPatternCode}).
+ * <p>
+ * The patterns are the classic shapes of the MoGo playouts: hane, cuts and moves along the edge.
+ * They are expanded at class loading into a table with the weight of every pattern code, for the
+ * 8 rotations and reflections of each shape and with the colors swapped, so that a lookup is a
+ * single array access whoever is to play.
+ */
+public class PatternTable {
+
+  /**
+   * Weight of the moves matching no pattern.
+   */
+  public static final int DEFAULT_WEIGHT = 1;
+  /**
+   * Weight of the moves matching a pattern.
+   */
+  public static final int PATTERN_WEIGHT = 10;
+
+  private static final int EMPTY = 0;
+  private static final int BLACK = 1;
+  private static final int WHITE = 2;
+  private static final int OFF_BOARD = 3;
+
+  /**
+   * The shapes, centered on the move. X and O are the two colors, x and o anything but X and O,
+   * '.' an empty position, ' ' off board and '?' anything.
+   */
+  private static final String[][] PATTERNS = {
+      // Hane: enclosing, non cutting and magari.
+      {"XOX",
+       "...",
+       "???"},
+      {"XO.",
+       "...",
+       "?.?"},
+      {"XO?",
+       "X..",
+       "x.?"},
+      // Diagonal attachment.
+      {".O.",
+       "X..",
+       "..."},
+      // Cuts: unprotected, peeped, de and keima.
+      {"XO?",
+       "O.o",
+       "?o?"},
+      {"XO?",
+       "O.X",
+       "???"},
+      {"?X?",
+       "O.O",
+       "ooo"},
+      {"OX?",
+       "o.O",
+       "???"},
+      // Edge: chase, block a cut, block a connection, sagari and cut.
+      {"X.?",
+       "O.?",
+       "   "},
+      {"OX?",
+       "X.O",
+       "   "},
+      {"?X?",
+       "x.O",
+       "   "},
+      {"?XO",
+       "x.x",
+       "   "},
+      {"?OX",
+       "X.O",
+       "   "},
+  };
+
+  // Row and column of each slot of the pattern codes around the center (1, 1).
+  private static final int[] SLOT_ROWS = {0, 0, 0, 1, 1, 2, 2, 2};
+  private static final int[] SLOT_COLUMNS = {0, 1, 2, 0, 2, 0, 1, 2};
+
+  private static final int[] WEIGHTS = createWeights();
+
+  private PatternTable() {
+  }
+
+  /**
+   * Returns the weight of a move from the code of its 3x3 neighborhood.
+   */
+  public static int getWeight(int patternCode) {
+    return WEIGHTS[patternCode];
+  }
+
+  private static int[] createWeights() {
+    int[] weights = new int[1 << 16];
+    Arrays.fill(weights, DEFAULT_WEIGHT);
+    for (String[] pattern : PATTERNS) {
+      for (int symmetry = 0; symmetry < 8; symmetry++) {
+        char[] cells = getCells(pattern, symmetry);
+        addPattern(weights, cells, false);
+        addPattern(weights, cells, true);
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * Returns the cells of the pattern in the order of the slots, after one of the 8 rotations and
+   * reflections of the square.
+   */
+  private static char[] getCells(String[] pattern, int symmetry) {
+    char[] cells = new char[SLOT_ROWS.length];
+    for (int slot = 0; slot < cells.length; slot++) {
+      int row = SLOT_ROWS[slot];
+      int column = SLOT_COLUMNS[slot];
+      if ((symmetry & 1) != 0) {
+        column = 2 - column;
+      }
+      if ((symmetry & 2) != 0) {
+        row = 2 - row;
+      }
+      if ((symmetry & 4) != 0) {
+        int swap = row;
+        row = column;
+        column = swap;
+      }
+      cells[slot] = pattern[row].charAt(column);
+    }
+    return cells;
+  }
+
+  private static void addPattern(int[] weights, char[] cells, boolean swapColors) {
+    addCodes(weights, cells, swapColors ? WHITE : BLACK, swapColors ? BLACK : WHITE, 0, 0);
+  }
+
+  /**
+   * Gives the pattern weight to all the codes matching the cells from {@code slot} on, the
+   * previous slots being set in {@code code}.
+   */
+  private static void addCodes(int[] weights, char[] cells, int x, int o, int slot, int code) {
+    if (slot == cells.length) {
+      weights[code] = PATTERN_WEIGHT;
+      return;
+    }
+    for (int color = EMPTY; color <= OFF_BOARD; color++) {
+      if (matches(cells[slot], color, x, o)) {
+        addCodes(weights, cells, x, o, slot + 1, code | color << (2 * slot));
+      }
+    }
+  }
+
+  private static boolean matches(char cell, int color, int x, int o) {
+    switch (cell) {
+      case 'X':
+        return color == x;
+      case 'O':
+        return color == o;
+      case 'x':
+        return color != x;
+      case 'o':
+        return color != o;
+      case '.':
+        return color == EMPTY;
+      case ' ':
+        return color == OFF_BOARD;
+      case '?':
+        return true;
+      default:
+        throw new RuntimeException("Invalid pattern cell: " + cell);
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package com.cauchymop.goblob.model;
+
+import com.cauchymop.goblob.proto.PlayGameData.Color;
+
+import java.util.Random;
+
+/**
+ * Plays random moves until the end of a {@link GoGame}, as the roll out phase of Monte-Carlo
+ * Tree Search.
+ * <p>
+ * With patterns, the answers to the last move are drawn with the {@link PatternTable} weight of
+ * their 3x3 neighborhood, so that the playouts look more like real games; otherwise all the moves
+ * are drawn uniformly.
+ * <p>
+ * With tactics, the playout first captures the last move when it's in atari, or else extends the
+ * groups it put in atari, and it never puts a group of several stones in atari itself. Single
+ * stone self-ataris are kept, as they are needed to kill groups from the inside.
+ * <p>
+ * A playout stops before the end of the game when the stone difference passes the mercy
+ * threshold, and isn't played at all when it starts from a position that
+ * {@link UnconditionalLife} finds settled.
+ * <p>
+ * The candidate moves are kept in a reusable buffer, so that no object is allocated once the
+ * buffer and the game history have reached their size. An instance must only be used by one
+ * thread at a time.
+ */
+public class Playout {
+
+  // Only the playouts starting with less than 1/4 of empty positions are checked for a settled
+  // position: the random moves fill the territories, which are settled only when reduced to
+  // eyes, one move before the end of the game.
+  private static final int SETTLED_START_EMPTY_RATIO = 4;
+
+  private final Random random;
+  private final boolean usePatterns;
+  private final boolean useTactics;
+  private final double mercyThreshold;
+  private final boolean checkLife;
+  private UnconditionalLife unconditionalLife;
+  private TerritoryScorer areaScorer;
+  private boolean lastScoreFinal;
+  private int[] moves = new int[0];
+  // The pattern weights of the first candidates, the answers to the last move. The other
+  // candidates have the default weight, so that a draw only scans the few answers.
+  private int[] weights = new int[0];
+  private int answerCount;
+  private int answerWeight;
+  // Index in the candidates of each move, only meaningful for the current candidates.
+  private int[] candidateIndexes = new int[0];
+
+  public Playout(Random random) {
+    this(random, SearchConfig.getDefault());
+  }
+
+  public Playout(Random random, SearchConfig config) {
+    this.random = random;
+    usePatterns = config.isPatternPlayouts();
+    useTactics = config.isTacticalPlayouts();
+    mercyThreshold = config.getMercyThreshold();
+    checkLife = config.isUnconditionalLifeCheck();
+  }
+
+  /**
+   * Plays moves until the end of the game, or until its result is known, and returns the score
+   * of black without komi: the area score when the game ends or the position is settled, or else
+   * the stone difference when the mercy rule stops the playout. The moves stay played, it's up to
+   * the caller to undo them.
+   */
+  public int run(GoGame game) {
+    int numberOfPositions = game.getPassValue();
+    if (moves.length < numberOfPositions) {
+      moves = new int[numberOfPositions];
+      weights = new int[numberOfPositions];
+      candidateIndexes = new int[numberOfPositions];
+    }
+    if (checkLife && (unconditionalLife == null
+        || unconditionalLife.getSize() != game.getBoardSize())) {
+      unconditionalLife = new UnconditionalLife(game.getBoardSize());
+    }
+    if (areaScorer == null || areaScorer.getSize() != game.getBoardSize()) {
+      areaScorer = new TerritoryScorer(game.getBoardSize());
+    }
+    GoBoard board = game.getBoard();
+    int mercyMargin = (int) Math.ceil(mercyThreshold * numberOfPositions);
+    lastScoreFinal = true;
+    if (checkLife && board.getEmptyCount() * SETTLED_START_EMPTY_RATIO <= numberOfPositions
+        && unconditionalLife.isSettled(board)) {
+      return unconditionalLife.getAreaScore();
+    }
+    lastScoreFinal = game.isGameEnd();
+    while (!game.isGameEnd()) {
+      if (mercyMargin > 0 && Math.abs(board.getScore()) >= mercyMargin) {
+        return board.getScore();
+      }
+      if (useTactics && playTacticalMove(game)) {
+        continue;
+      }
+      if (usePatterns) {
+        playPatternMove(game);
+      } else {
+        playRandomMove(game);
+      }
+    }
+    // The eyes left at the end of the game count in the area of their owner.
+    areaScorer.score(board);
+    return areaScorer.getAreaScore();
+  }
+
+  /**
+   * Returns whether the score returned by the last run is the final score of the game, whatever
+   * the moves played: the game was already over, or the position settled.
+   */
+  public boolean isLastScoreFinal() {
+    return lastScoreFinal;
+  }
+
+  /**
+   * Plays a random move which doesn't fill an eye of the current player, or passes if there is
+   * none.
+   */
+  private void playRandomMove(GoGame game) {
+    int count = game.getNonEyeFillingMoves(moves);
+    while (count > 0) {
+      int index = random.nextInt(count);
+      if (isPlayable(game, moves[index]) && game.play(moves[index])) {
+        return;
+      }
+      // Invalid move, replace it with the last candidate.
+      moves[index] = moves[--count];
+    }
+    game.play(game.getPassValue());
+  }
+
+  /**
+   * Plays a move which doesn't fill an eye of the current player, or passes if there is none. The
+   * moves around the last one are drawn with the weight of their pattern, as they are the
+   * answers to the last move, and the other moves with the default weight.
+   */
+  private void playPatternMove(GoGame game) {
+    int count = game.getNonEyeFillingMoves(moves);
+    for (int i = 0; i < count; i++) {
+      candidateIndexes[moves[i]] = i;
+    }
+    answerCount = 0;
+    answerWeight = 0;
+    int lastMove = game.getLastMove();
+    if (lastMove != GoGame.NO_MOVE && lastMove != game.getPassValue()) {
+      weightAnswers(game, lastMove, count);
+    }
+    while (count > 0) {
+      int totalWeight = answerWeight + (count - answerCount) * PatternTable.DEFAULT_WEIGHT;
+      int index = getWeightedIndex(random.nextInt(totalWeight));
+      if (isPlayable(game, moves[index]) && game.play(moves[index])) {
+        return;
+      }
+      // Invalid move, replace it with the last answer, and that one with the last candidate.
+      count--;
+      if (index < answerCount) {
+        answerCount--;
+        answerWeight -= weights[index];
+        moves[index] = moves[answerCount];
+        weights[index] = weights[answerCount];
+        index = answerCount;
+      }
+      moves[index] = moves[count];
+    }
+    game.play(game.getPassValue());
+  }
+
+  /**
+   * Captures the last move if it's in atari, or else extends a group of the current player that
+   * it put in atari. Returns whether a move was played.
+   */
+  private boolean playTacticalMove(GoGame game) {
+    int lastMove = game.getLastMove();
+    if (lastMove == GoGame.NO_MOVE || lastMove == game.getPassValue()) {
+      return false;
+    }
+    GoBoard board = game.getBoard();
+    if (board.isInAtari(lastMove) && game.play(board.getAtariLiberty(lastMove))) {
+      return true;
+    }
+    int size = game.getBoardSize();
+    int x = lastMove % size;
+    int y = lastMove / size;
+    return (x > 0 && escapeAtari(game, lastMove - 1))
+        || (x < size - 1 && escapeAtari(game, lastMove + 1))
+        || (y > 0 && escapeAtari(game, lastMove - size))
+        || (y < size - 1 && escapeAtari(game, lastMove + size));
+  }
+
+  /**
+   * Extends the group at the position if it belongs to the current player and is in atari,
+   * unless that is still a self-atari. Returns whether a move was played.
+   */
+  private boolean escapeAtari(GoGame game, int position) {
+    GoBoard board = game.getBoard();
+    if (board.getColor(position) != game.getCurrentColor() || !board.isInAtari(position)) {
+      return false;
+    }
+    int liberty = board.getAtariLiberty(position);
+    return !board.isSelfAtari(liberty, game.getCurrentColor()) && game.play(liberty);
+  }
+
+  /**
+   * Returns whether the candidate move can be played by the policy.
+   */
+  private boolean isPlayable(GoGame game, int move) {
+    return !useTactics || !game.getBoard().isSelfAtari(move, game.getCurrentColor())
+        || !hasFriendNeighbor(game, move);
+  }
+
+  private boolean hasFriendNeighbor(GoGame game, int move) {
+    GoBoard board = game.getBoard();
+    Color color = game.getCurrentColor();
+    int size = game.getBoardSize();
+    int x = move % size;
+    int y = move / size;
+    return (x > 0 && board.getColor(move - 1) == color)
+        || (x < size - 1 && board.getColor(move + 1) == color)
+        || (y > 0 && board.getColor(move - size) == color)
+        || (y < size - 1 && board.getColor(move + size) == color);
+  }
+
+  /**
+   * Moves the candidates around the last move to the front of the candidates, as the answers,
+   * with their pattern weight.
+   */
+  private void weightAnswers(GoGame game, int lastMove, int count) {
+    GoBoard board = game.getBoard();
+    int size = game.getBoardSize();
+    int lastX = lastMove % size;
+    int lastY = lastMove / size;
+    for (int y = Math.max(lastY - 1, 0); y <= Math.min(lastY + 1, size - 1); y++) {
+      for (int x = Math.max(lastX - 1, 0); x <= Math.min(lastX + 1, size - 1); x++) {
+        int move = board.getPos(x, y);
+        int index = candidateIndexes[move];
+        // The index is left over from a previous move unless it points back to the move.
+        if (index < count && moves[index] == move) {
+          moves[index] = moves[answerCount];
+          candidateIndexes[moves[index]] = index;
+          moves[answerCount] = move;
+          candidateIndexes[move] = answerCount;
+          weights[answerCount] = PatternTable.getWeight(board.getPatternCode(move));
+          answerWeight += weights[answerCount];
+          answerCount++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the candidate covering {@code target} when the candidates are laid out
+   * one after the other with the length of their weight. Only the answers are scanned, the index
+   * of a default weight candidate is computed.
+   */
+  private int getWeightedIndex(int target) {
+    for (int index = 0; index < answerCount; index++) {
+      if (target < weights[index]) {
+        return index;
+      }
+      target -= weights[index];
+    }
+    return answerCount + target / PatternTable.DEFAULT_WEIGHT;
+  }
+}
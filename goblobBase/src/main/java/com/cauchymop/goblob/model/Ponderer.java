@@ -0,0 +1,143 @@
+package com.cauchymop.goblob.model;
+
+import com.cauchymop.goblob.proto.PlayGameData.GameData.Phase;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Color;
+
+/**
+ * Searches on a low priority background thread while the opponent of the engine is thinking. With
+ * several threads, the searchers run on the threads of the session, which should be created with
+ * a low priority thread factory too.
+ * <p>
+ * The pondering search builds the tree of a {@link SearchSession}. When the opponent plays, the
+ * engine search reuses the subtree of that move, so moves anticipated by the pondering are
+ * answered with most of their search already done.
+ * <p>
+ * Registered as the {@link GoGameController.Listener} of a game, it ponders whenever the opponent
+ * of the engine is to move. It doesn't ponder while an engine search holds the session. Its
+ * methods must be called from a single thread, and only {@link #stopPondering} and
+ * {@link #search} wait for the end of the pondering.
+ */
+public class Ponderer implements GoGameController.Listener {
+
+  private final SearchSession session;
+  private final Color engineColor;
+  private final SearchBudget ponderingBudget;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder()
+          .setNameFormat("ponderer-%d")
+          .setDaemon(true)
+          .setPriority(Thread.MIN_PRIORITY)
+          .build());
+  private Future<SearchResult> pondering;
+  private CancellationToken ponderingCancellationToken;
+
+  /**
+   * Creates a ponderer for the engine playing {@code engineColor}. Each pondering stops at the
+   * latest when {@code ponderingBudget} is spent.
+   */
+  public Ponderer(SearchSession session, Color engineColor, SearchBudget ponderingBudget) {
+    this.session = session;
+    this.engineColor = engineColor;
+    this.ponderingBudget = ponderingBudget;
+  }
+
+  @Override
+  public void onGameChanged(GoGameController gameController) {
+    if (gameController.getPhase() == Phase.IN_GAME
+        && gameController.getGame().getCurrentColor() != engineColor) {
+      ponder(gameController.getGame());
+    } else {
+      cancelPondering();
+    }
+  }
+
+  /**
+   * Starts pondering on a copy of the game, after cancelling the current pondering. The pondering
+   * doesn't search if another search holds the session when it starts.
+   */
+  public void ponder(GoGame game) {
+    cancelPondering();
+    final GoGame gameCopy = game.copy();
+    final CancellationToken cancellationToken = new CancellationToken();
+    ponderingCancellationToken = cancellationToken;
+    pondering = executor.submit(new Callable<SearchResult>() {
+      @Override
+      public SearchResult call() {
+        if (cancellationToken.isCancelled() || !session.tryAcquire()) {
+          return null;
+        }
+        try {
+          return session.search(gameCopy, ponderingBudget, cancellationToken);
+        } finally {
+          session.release();
+        }
+      }
+    });
+  }
+
+  public SearchSession getSession() {
+    return session;
+  }
+
+  public boolean isPondering() {
+    return pondering != null;
+  }
+
+  /**
+   * Cancels the pondering, without waiting for its end.
+   */
+  public void cancelPondering() {
+    if (pondering != null) {
+      ponderingCancellationToken.cancel();
+      pondering = null;
+      ponderingCancellationToken = null;
+    }
+  }
+
+  /**
+   * Stops the pondering and waits for its end. Returns the result of the pondering, whose move is
+   * the one expected from the opponent, or null if there was no pondering or it didn't search.
+   */
+  public SearchResult stopPondering() {
+    if (pondering == null) {
+      return null;
+    }
+    ponderingCancellationToken.cancel();
+    SearchResult result = Futures.getUnchecked(pondering);
+    pondering = null;
+    ponderingCancellationToken = null;
+    return result;
+  }
+
+  /**
+   * Cancels the pondering and searches the best move of the engine, from the tree built so far,
+   * once the pondering has released the session.
+   */
+  public SearchResult search(GoGame game, SearchBudget budget,
+      CancellationToken cancellationToken) throws InterruptedException {
+    cancelPondering();
+    session.acquire();
+    try {
+      return session.search(game, budget, cancellationToken);
+    } finally {
+      session.release();
+    }
+  }
+
+  /**
+   * Cancels the pondering and stops its thread once the pondering is over, without waiting for
+   * it. The ponderer can't be used afterwards.
+   */
+  public void shutdown() {
+    cancelPondering();
+    executor.shutdown();
+  }
+}
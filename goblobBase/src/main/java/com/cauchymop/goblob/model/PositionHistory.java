@@ -0,0 +1,91 @@
+package com.cauchymop.goblob.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * History of the positions of a {@link GoGame}, to detect repeated positions without comparing
+ * every previous board and without allocating.
+ * <p>
+ * Each position is stored as the Zobrist hash and the undo count of its {@link GoBoard}. An open
+ * addressing table indexes the positions by hash. As positions are only removed in the reverse
+ * order of their addition, removing one just frees its slot: no position added before it can have
+ * been probed past it.
+ */
+class PositionHistory implements Serializable {
+
+  private static final int NO_POSITION = -1;
+
+  private long[] hashes = new long[64];
+  private int[] undoCounts = new int[64];
+  private int size;
+  // Index in hashes of the position stored in each slot, or NO_POSITION.
+  private int[] slots = newSlots(128);
+
+  private static int[] newSlots(int slotCount) {
+    int[] slots = new int[slotCount];
+    Arrays.fill(slots, NO_POSITION);
+    return slots;
+  }
+
+  public void add(long hash, int undoCount) {
+    if (size == hashes.length) {
+      hashes = Arrays.copyOf(hashes, 2 * size);
+      undoCounts = Arrays.copyOf(undoCounts, 2 * size);
+    }
+    hashes[size] = hash;
+    undoCounts[size] = undoCount;
+    if (2 * (size + 1) > slots.length) {
+      slots = newSlots(2 * slots.length);
+      for (int position = 0; position < size; position++) {
+        slots[findFreeSlot(hashes[position])] = position;
+      }
+    }
+    slots[findFreeSlot(hash)] = size;
+    size++;
+  }
+
+  public void removeLast() {
+    size--;
+    int slot = getFirstSlot(hashes[size]);
+    while (slots[slot] != size) {
+      slot = getNextSlot(slot);
+    }
+    slots[slot] = NO_POSITION;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns whether the current position of the board is in the history. Boards are only compared
+   * for positions with the same hash.
+   */
+  public boolean contains(GoBoard board) {
+    long hash = board.getZobristHash();
+    for (int slot = getFirstSlot(hash); slots[slot] != NO_POSITION; slot = getNextSlot(slot)) {
+      int position = slots[slot];
+      if (hashes[position] == hash && board.hasSameStones(undoCounts[position])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int findFreeSlot(long hash) {
+    int slot = getFirstSlot(hash);
+    while (slots[slot] != NO_POSITION) {
+      slot = getNextSlot(slot);
+    }
+    return slot;
+  }
+
+  private int getFirstSlot(long hash) {
+    return (int) (hash ^ (hash >>> 32)) & (slots.length - 1);
+  }
+
+  private int getNextSlot(int slot) {
+    return (slot + 1) & (slots.length - 1);
+  }
+}
@@ -1,12 +1,5 @@
 package com.cauchymop.goblob.model;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
-
-import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import static com.cauchymop.goblob.proto.PlayGameData.Color;
@@ -15,113 +8,63 @@ import static com.cauchymop.goblob.proto.PlayGameData.Score;
 
 /**
  * Class to compute territories.
+ * <p>
+ * The territories are computed on positions by a {@link TerritoryScorer}, and only converted to
+ * {@link Position} protos to build the {@link Score}.
  */
 public class ScoreGenerator {
 
-  private ImmutableMap<Color, HashSet<Position>> territories = ImmutableMap.of(
-      Color.BLACK, Sets.<Position>newHashSet(), Color.WHITE, Sets.<Position>newHashSet());
-  private float komi;
-  private int blackStoneCount;
-  private int whiteStoneCount;
+  private final TerritoryScorer scorer;
+  private final float komi;
 
   public ScoreGenerator(GoBoard board, Set<Position> deadStones, float komi) {
-    this.komi = komi;
-    findTerritories(board, deadStones);
-    countLiveStones(board, deadStones);
+    this(board, toBitBoard(board, deadStones), komi);
   }
 
-  private void countLiveStones(GoBoard board, Set<Position> deadStones) {
-    for (int x=0 ; x<board.getSize() ; x++) {
-      for (int y=0 ; y<board.getSize() ; y++) {
-        Position position = Position.newBuilder().setX(x).setY(y).build();
-        if (deadStones.contains(position)) {
-          continue;
-        }
-        if (board.getColor(x, y) == Color.BLACK) {
-          blackStoneCount++;
-        }
-        if (board.getColor(x, y) == Color.WHITE) {
-          whiteStoneCount++;
-        }
-      }
-    }
+  public ScoreGenerator(GoBoard board, BitBoard deadStones, float komi) {
+    this(createScorer(board, deadStones), komi);
   }
 
-  private void findTerritories(GoBoard board, Set<Position> deadStones) {
-    Set<Position> unknownTerritories = getEmptyPositions(board);
-    while (!unknownTerritories.isEmpty()) {
-      Position position = Iterables.getFirst(unknownTerritories, null);
-      Set<Position> painted = Sets.newHashSet();
-      Set<Color> colors = Sets.newHashSet();
-      fill(board, deadStones, position, painted, colors);
-      if (colors.size() == 1) {
-        Color color = Iterables.getFirst(colors, null);
-        territories.get(color).addAll(painted);
-      }
-      unknownTerritories.removeAll(painted);
-    }
-  }
-
-  public Score getScore() {
-    float blackScore = territories.get(Color.BLACK).size() + blackStoneCount;
-    float whiteScore = territories.get(Color.WHITE).size() + whiteStoneCount + komi;
-    return Score.newBuilder()
-        .addAllBlackTerritory(territories.get(Color.BLACK))
-        .addAllWhiteTerritory(territories.get(Color.WHITE))
-        .setWinner(blackScore > whiteScore ? Color.BLACK : Color.WHITE)
-        .setWonBy(Math.abs(blackScore - whiteScore))
-        .build();
+  /**
+   * Creates the score of the board last scored by {@code scorer}.
+   */
+  public ScoreGenerator(TerritoryScorer scorer, float komi) {
+    this.scorer = scorer;
+    this.komi = komi;
   }
 
-  private void fill(GoBoard board, Set<Position> deadStones, Position seed,
-      Set<Position> painted, Set<Color> colors) {
-    List<Position> seeds = Lists.newArrayList(seed);
-    while (!seeds.isEmpty()) {
-      Position position = seeds.remove(0);
-      if (painted.contains(position)) {
-        continue;
-      }
-      int x = position.getX();
-      int y = position.getY();
-      Color color = board.getColor(x, y);
-      if (color == null || deadStones.contains(position)) {
-        painted.add(position);
-        seeds.addAll(getNeighbors(board, x, y));
-      } else {
-        colors.add(color);
-      }
-    }
+  private static TerritoryScorer createScorer(GoBoard board, BitBoard deadStones) {
+    TerritoryScorer scorer = new TerritoryScorer(board.getSize());
+    scorer.score(board, deadStones);
+    return scorer;
   }
 
-  private Set<Position> getNeighbors(GoBoard board, int x, int y) {
-    Set<Position> neighbors = Sets.newHashSet();
-    if (x > 0) {
-      neighbors.add(getPosition(x - 1, y));
+  private static BitBoard toBitBoard(GoBoard board, Set<Position> deadStones) {
+    BitBoard bitBoard = BitBoard.forBoardSize(board.getSize());
+    for (Position position : deadStones) {
+      bitBoard.set(board.getPos(position.getX(), position.getY()));
     }
-    if (x < board.getSize() - 1) {
-      neighbors.add(getPosition(x + 1, y));
-    }
-    if (y > 0) {
-      neighbors.add(getPosition(x, y-1));
-    }
-    if (y < board.getSize() - 1) {
-      neighbors.add(getPosition(x, y + 1));
-    }
-    return neighbors;
+    return bitBoard;
   }
 
-  private Set<Position> getEmptyPositions(GoBoard board) {
-    Set<Position> emptyPositions = Sets.newHashSet();
-    int boardSize = board.getSize();
-    for (int x = 0; x < boardSize; x++) {
-      for (int y = 0; y < boardSize; y++) {
-        if (board.getColor(x, y) == null) {
-          Position position = getPosition(x, y);
-          emptyPositions.add(position);
-        }
+  /**
+   * Returns the area score of the board: the live stones and the territory of each color.
+   */
+  public Score getScore() {
+    float blackLead = scorer.getAreaScore() - komi;
+    Score.Builder score = Score.newBuilder()
+        .setWinner(blackLead > 0 ? Color.BLACK : Color.WHITE)
+        .setWonBy(Math.abs(blackLead));
+    int size = scorer.getSize();
+    for (int pos = 0; pos < size * size; pos++) {
+      Color owner = scorer.getTerritoryColor(pos);
+      if (owner == Color.BLACK) {
+        score.addBlackTerritory(getPosition(pos % size, pos / size));
+      } else if (owner == Color.WHITE) {
+        score.addWhiteTerritory(getPosition(pos % size, pos / size));
       }
     }
-    return emptyPositions;
+    return score.build();
   }
 
   private Position getPosition(int x, int y) {
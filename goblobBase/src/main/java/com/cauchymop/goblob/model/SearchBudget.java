@@ -0,0 +1,53 @@
+package com.cauchymop.goblob.model;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Limits of a {@link MonteCarlo} search: a wall-clock time and/or a number of iterations. The
+ * search stops as soon as one of them is reached.
+ */
+public class SearchBudget {
+
+  public static final long NO_TIME_LIMIT = Long.MAX_VALUE;
+  public static final int NO_ITERATION_LIMIT = Integer.MAX_VALUE;
+
+  private final long maxTimeMillis;
+  private final int maxIterations;
+
+  public SearchBudget(long maxTimeMillis, int maxIterations) {
+    Preconditions.checkArgument(maxTimeMillis >= 0, "Negative time budget: %s", maxTimeMillis);
+    Preconditions.checkArgument(maxIterations >= 0, "Negative iteration budget: %s", maxIterations);
+    this.maxTimeMillis = maxTimeMillis;
+    this.maxIterations = maxIterations;
+  }
+
+  public static SearchBudget ofTime(long maxTimeMillis) {
+    return new SearchBudget(maxTimeMillis, NO_ITERATION_LIMIT);
+  }
+
+  public static SearchBudget ofIterations(int maxIterations) {
+    return new SearchBudget(NO_TIME_LIMIT, maxIterations);
+  }
+
+  public long getMaxTimeMillis() {
+    return maxTimeMillis;
+  }
+
+  public int getMaxIterations() {
+    return maxIterations;
+  }
+
+  public boolean hasTimeLimit() {
+    return maxTimeMillis != NO_TIME_LIMIT;
+  }
+
+  public boolean hasIterationLimit() {
+    return maxIterations != NO_ITERATION_LIMIT;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SearchBudget(maxTimeMillis=%d, maxIterations=%d)", maxTimeMillis,
+        maxIterations);
+  }
+}
@@ -0,0 +1,232 @@
+package com.cauchymop.goblob.model;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Settings of a {@link MonteCarlo} search.
+ */
+public class SearchConfig {
+
+  public static final int DEFAULT_RAVE_EQUIVALENCE = 1000;
+  public static final int DEFAULT_TRANSPOSITION_TABLE_SIZE = 1 << 16;
+  public static final double DEFAULT_MERCY_THRESHOLD = 0.3;
+  public static final float DEFAULT_KOMI = 0.5f;
+
+  private final int threadCount;
+  private final int raveEquivalence;
+  private final int transpositionTableSize;
+  private final boolean patternPlayouts;
+  private final boolean tacticalPlayouts;
+  private final double mercyThreshold;
+  private final boolean unconditionalLifeCheck;
+  private final float komi;
+  private final boolean seeded;
+  private final long seed;
+
+  private SearchConfig(Builder builder) {
+    threadCount = builder.threadCount;
+    raveEquivalence = builder.raveEquivalence;
+    transpositionTableSize = builder.transpositionTableSize;
+    patternPlayouts = builder.patternPlayouts;
+    tacticalPlayouts = builder.tacticalPlayouts;
+    mercyThreshold = builder.mercyThreshold;
+    unconditionalLifeCheck = builder.unconditionalLifeCheck;
+    komi = builder.komi;
+    seeded = builder.seeded;
+    seed = builder.seed;
+  }
+
+  public static SearchConfig getDefault() {
+    return newBuilder().build();
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public Builder toBuilder() {
+    Builder builder = newBuilder()
+        .setThreadCount(threadCount)
+        .setRaveEquivalence(raveEquivalence)
+        .setTranspositionTableSize(transpositionTableSize)
+        .setPatternPlayouts(patternPlayouts)
+        .setTacticalPlayouts(tacticalPlayouts)
+        .setMercyThreshold(mercyThreshold)
+        .setUnconditionalLifeCheck(unconditionalLifeCheck)
+        .setKomi(komi);
+    if (seeded) {
+      builder.setSeed(seed);
+    }
+    return builder;
+  }
+
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  /**
+   * Returns the number of visits of a node for which its own statistics and its all-moves-as-first
+   * (RAVE) statistics have the same weight. The weight of the RAVE statistics is
+   * sqrt(k / (3 * visits + k)), and 0 disables them.
+   */
+  public int getRaveEquivalence() {
+    return raveEquivalence;
+  }
+
+  public boolean isRaveEnabled() {
+    return raveEquivalence > 0;
+  }
+
+  /**
+   * Returns the maximum number of positions of the {@link TranspositionTable}, 0 meaning no
+   * table.
+   */
+  public int getTranspositionTableSize() {
+    return transpositionTableSize;
+  }
+
+  public boolean isTranspositionTableEnabled() {
+    return transpositionTableSize > 0;
+  }
+
+  /**
+   * Returns whether the playouts draw their moves with the weights of the {@link PatternTable}
+   * rather than uniformly.
+   */
+  public boolean isPatternPlayouts() {
+    return patternPlayouts;
+  }
+
+  /**
+   * Returns whether the playouts capture and escape ataris around the last move, and avoid
+   * self-ataris.
+   */
+  public boolean isTacticalPlayouts() {
+    return tacticalPlayouts;
+  }
+
+  /**
+   * Returns the stone difference, as a fraction of the number of positions of the board, from
+   * which a playout is stopped and won by the leading color (the mercy rule). 0 disables it.
+   */
+  public double getMercyThreshold() {
+    return mercyThreshold;
+  }
+
+  public boolean isMercyRuleEnabled() {
+    return mercyThreshold > 0;
+  }
+
+  /**
+   * Returns whether the playouts starting from a position that {@link UnconditionalLife} finds
+   * settled are scored without being played.
+   */
+  public boolean isUnconditionalLifeCheck() {
+    return unconditionalLifeCheck;
+  }
+
+  /**
+   * Returns the komi given to white by the playouts, which should be the one of the game.
+   */
+  public float getKomi() {
+    return komi;
+  }
+
+  /**
+   * Returns whether the random generators of the search are seeded by {@link #getSeed}, so that a
+   * single-threaded search with an iteration budget can be replayed. Otherwise they are seeded
+   * differently at each search.
+   */
+  public boolean hasSeed() {
+    return seeded;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SearchConfig(threadCount=%d, raveEquivalence=%d, "
+            + "transpositionTableSize=%d, patternPlayouts=%b, tacticalPlayouts=%b, "
+            + "mercyThreshold=%s, unconditionalLifeCheck=%b, komi=%s, seed=%s)", threadCount,
+        raveEquivalence, transpositionTableSize, patternPlayouts, tacticalPlayouts,
+        mercyThreshold, unconditionalLifeCheck, komi, seeded ? seed : "none");
+  }
+
+  /**
+   * Builder of {@link SearchConfig}.
+   */
+  public static class Builder {
+    private int threadCount = 1;
+    private int raveEquivalence = DEFAULT_RAVE_EQUIVALENCE;
+    private int transpositionTableSize = DEFAULT_TRANSPOSITION_TABLE_SIZE;
+    private boolean patternPlayouts;
+    private boolean tacticalPlayouts;
+    private double mercyThreshold = DEFAULT_MERCY_THRESHOLD;
+    private boolean unconditionalLifeCheck = true;
+    private float komi = DEFAULT_KOMI;
+    private boolean seeded;
+    private long seed;
+
+    private Builder() {
+    }
+
+    public Builder setThreadCount(int threadCount) {
+      Preconditions.checkArgument(threadCount > 0, "Invalid thread count: %s", threadCount);
+      this.threadCount = threadCount;
+      return this;
+    }
+
+    public Builder setRaveEquivalence(int raveEquivalence) {
+      Preconditions.checkArgument(raveEquivalence >= 0, "Invalid RAVE equivalence: %s",
+          raveEquivalence);
+      this.raveEquivalence = raveEquivalence;
+      return this;
+    }
+
+    public Builder setTranspositionTableSize(int transpositionTableSize) {
+      Preconditions.checkArgument(transpositionTableSize >= 0,
+          "Invalid transposition table size: %s", transpositionTableSize);
+      this.transpositionTableSize = transpositionTableSize;
+      return this;
+    }
+
+    public Builder setPatternPlayouts(boolean patternPlayouts) {
+      this.patternPlayouts = patternPlayouts;
+      return this;
+    }
+
+    public Builder setTacticalPlayouts(boolean tacticalPlayouts) {
+      this.tacticalPlayouts = tacticalPlayouts;
+      return this;
+    }
+
+    public Builder setMercyThreshold(double mercyThreshold) {
+      Preconditions.checkArgument(mercyThreshold >= 0 && mercyThreshold <= 1,
+          "Invalid mercy threshold: %s", mercyThreshold);
+      this.mercyThreshold = mercyThreshold;
+      return this;
+    }
+
+    public Builder setUnconditionalLifeCheck(boolean unconditionalLifeCheck) {
+      this.unconditionalLifeCheck = unconditionalLifeCheck;
+      return this;
+    }
+
+    public Builder setKomi(float komi) {
+      this.komi = komi;
+      return this;
+    }
+
+    public Builder setSeed(long seed) {
+      this.seeded = true;
+      this.seed = seed;
+      return this;
+    }
+
+    public SearchConfig build() {
+      return new SearchConfig(this);
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package com.cauchymop.goblob.model;
+
+/**
+ * Listener of the progress of a {@link MonteCarlo} search. The {@link SearchStats} of the search
+ * are available from the results it receives.
+ */
+public interface SearchListener {
+
+  /**
+   * Called periodically from one of the search threads with the current state of the search. The
+   * stop reason of the result is null, as the search is still running.
+   */
+  void onProgress(SearchResult progress);
+
+  /**
+   * Called from the thread of the search when it ends, with its final result.
+   */
+  void onSearchEnd(SearchResult result);
+}
@@ -0,0 +1,91 @@
+package com.cauchymop.goblob.model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link MonteCarlo} search: the selected move and the {@link SearchStats} of the
+ * search, from which the iterations, nodes and elapsed time are read.
+ */
+public class SearchResult {
+
+  /**
+   * Why the search stopped.
+   */
+  public enum StopReason {
+    // The time or iteration budget was spent.
+    BUDGET_EXHAUSTED,
+    // The best move could not be overtaken within the remaining budget.
+    BEST_MOVE_SETTLED,
+    // The result of the game from the searched position is proven.
+    RESULT_PROVEN,
+    CANCELLED
+  }
+
+  private final int move;
+  private final int moveVisits;
+  private final double moveWinRate;
+  private final StopReason stopReason;
+  private final SearchStats stats;
+
+  public SearchResult(int move, int moveVisits, double moveWinRate, StopReason stopReason,
+      SearchStats stats) {
+    this.move = move;
+    this.moveVisits = moveVisits;
+    this.moveWinRate = moveWinRate;
+    this.stopReason = stopReason;
+    this.stats = stats;
+  }
+
+  public int getMove() {
+    return move;
+  }
+
+  /**
+   * Returns the number of playouts completed.
+   */
+  public int getIterations() {
+    return stats.getIterations();
+  }
+
+  /**
+   * Returns the number of nodes of the search tree.
+   */
+  public int getNodes() {
+    return stats.getNodes();
+  }
+
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(stats.getElapsedNanos());
+  }
+
+  public int getMoveVisits() {
+    return moveVisits;
+  }
+
+  /**
+   * Returns the estimated probability, between 0 and 1, that the current player wins by playing
+   * the move.
+   */
+  public double getMoveWinRate() {
+    return moveWinRate;
+  }
+
+  public StopReason getStopReason() {
+    return stopReason;
+  }
+
+  public SearchStats getStats() {
+    return stats;
+  }
+
+  public double getIterationsPerSecond() {
+    return stats.getPlayoutsPerSecond();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SearchResult(move=%d, iterations=%d, nodes=%d, elapsedMillis=%d, "
+            + "moveVisits=%d, moveWinRate=%.3f, stopReason=%s)", move, getIterations(), getNodes(),
+        getElapsedMillis(), moveVisits, moveWinRate, stopReason);
+  }
+}
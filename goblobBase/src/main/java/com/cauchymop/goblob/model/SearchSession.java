@@ -0,0 +1,179 @@
+package com.cauchymop.goblob.model;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link MonteCarlo} search tree from one move to the next of a game.
+ * <p>
+ * When the game has moved on since the previous search, the subtree of the moves played since
+ * then becomes the new root, and the rest of the tree is dropped by copying the subtree into a
+ * second arena. The next search then starts with the visits of that subtree. The transposition
+ * table is kept too, with its statistics halved at each search.
+ * <p>
+ * With several threads, the searches run on a pool of the session, created by the thread factory
+ * it's given, so that a {@link Ponderer} can search on low priority threads. The threads of the
+ * pool stop after a few idle seconds, so the session needs no shutdown.
+ * <p>
+ * A session is not thread safe: searches must not overlap. The searchers sharing a session, like
+ * the engine and its {@link Ponderer}, reserve it with {@link #acquire} or {@link #tryAcquire}
+ * before starting a search, and {@link #release} it once the search is over.
+ */
+public class SearchSession {
+
+  private static final long SEARCHER_KEEP_ALIVE_SECONDS = 10;
+
+  private final SearchConfig config;
+  private NodeArena arena;
+  private NodeArena spareArena;
+  private final TranspositionTable table;
+  // Position of the root of the tree, or null if the tree is empty.
+  private List<Integer> rootMoves;
+  private int rootBoardSize;
+  private int rootHandicap;
+  private final Semaphore reservation = new Semaphore(1);
+  private final ThreadFactory searcherThreadFactory;
+  private ThreadPoolExecutor searcherExecutor;
+
+  /**
+   * Creates a session whose trees have at most {@code capacity} nodes, searching on daemon
+   * threads of normal priority. Two arenas of that capacity are allocated.
+   */
+  public SearchSession(int capacity, SearchConfig config) {
+    this(capacity, config, new ThreadFactoryBuilder()
+        .setNameFormat("searcher-%d")
+        .setDaemon(true)
+        .build());
+  }
+
+  /**
+   * Creates a session whose trees have at most {@code capacity} nodes, searching on threads of
+   * {@code searcherThreadFactory}. Two arenas of that capacity are allocated.
+   */
+  public SearchSession(int capacity, SearchConfig config, ThreadFactory searcherThreadFactory) {
+    this.config = config;
+    this.searcherThreadFactory = searcherThreadFactory;
+    arena = new NodeArena(capacity);
+    spareArena = new NodeArena(capacity);
+    table = config.isTranspositionTableEnabled()
+        ? new TranspositionTable(config.getTranspositionTableSize()) : null;
+  }
+
+  /**
+   * Reserves the session for a search, waiting for the end of the current reservation.
+   */
+  public void acquire() throws InterruptedException {
+    reservation.acquire();
+  }
+
+  /**
+   * Reserves the session for a search. Returns false if it's already reserved.
+   */
+  public boolean tryAcquire() {
+    return reservation.tryAcquire();
+  }
+
+  /**
+   * Ends the reservation of the session, from any thread.
+   */
+  public void release() {
+    reservation.release();
+  }
+
+  /**
+   * Searches the best move for the current position of the game, reusing the tree of the
+   * previous search if the game is its continuation.
+   */
+  public SearchResult search(GoGame game, SearchBudget budget,
+      CancellationToken cancellationToken) {
+    return search(game, budget, cancellationToken, null);
+  }
+
+  /**
+   * Searches like {@link #search(GoGame, SearchBudget, CancellationToken)}, reporting the progress
+   * to {@code listener} unless it's null.
+   */
+  public SearchResult search(GoGame game, SearchBudget budget,
+      CancellationToken cancellationToken, SearchListener listener) {
+    moveRootTo(game);
+    if (table != null) {
+      table.age();
+    }
+    return MonteCarlo.continueSearch(game, budget, cancellationToken, config, arena, table,
+        listener, getSearcherExecutor());
+  }
+
+  /**
+   * Returns the pool of the searchers, or null when the searches run on the caller thread.
+   */
+  private ThreadPoolExecutor getSearcherExecutor() {
+    int threadCount = config.getThreadCount();
+    if (threadCount == 1) {
+      return null;
+    }
+    if (searcherExecutor == null) {
+      searcherExecutor = new ThreadPoolExecutor(threadCount, threadCount,
+          SEARCHER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          searcherThreadFactory);
+      searcherExecutor.allowCoreThreadTimeOut(true);
+    }
+    return searcherExecutor;
+  }
+
+  /**
+   * Returns the number of nodes in the tree, including the ones kept from the previous searches.
+   */
+  public int getNodeCount() {
+    return arena.size();
+  }
+
+  /**
+   * Drops the tree.
+   */
+  public void reset() {
+    arena.clear();
+    if (table != null) {
+      table.clear();
+    }
+    rootMoves = null;
+  }
+
+  private void moveRootTo(GoGame game) {
+    List<Integer> moves = game.getMoveHistory();
+    int root = findNode(game, moves);
+    if (root == NodeArena.NO_NODE) {
+      arena.clear();
+    } else if (root != NodeArena.ROOT) {
+      spareArena.copySubtree(arena, root);
+      NodeArena previousArena = arena;
+      arena = spareArena;
+      spareArena = previousArena;
+    }
+    rootMoves = moves;
+    rootBoardSize = game.getBoardSize();
+    rootHandicap = game.getHandicap();
+  }
+
+  /**
+   * Returns the node of the tree for the given moves, or {@link NodeArena#NO_NODE} if the tree
+   * doesn't contain it.
+   */
+  private int findNode(GoGame game, List<Integer> moves) {
+    if (rootMoves == null || game.getBoardSize() != rootBoardSize
+        || game.getHandicap() != rootHandicap || moves.size() < rootMoves.size()
+        || !moves.subList(0, rootMoves.size()).equals(rootMoves)) {
+      return NodeArena.NO_NODE;
+    }
+    int node = NodeArena.ROOT;
+    for (int i = rootMoves.size(); i < moves.size() && node != NodeArena.NO_NODE; i++) {
+      node = arena.findChild(node, moves.get(i));
+    }
+    return node;
+  }
+}
@@ -0,0 +1,152 @@
+package com.cauchymop.goblob.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Statistics of a {@link MonteCarlo} search, to follow the throughput of the engine and the moves
+ * it is considering.
+ */
+public class SearchStats {
+
+  private final int iterations;
+  private final long elapsedNanos;
+  private final int nodes;
+  private final int maxDepth;
+  private final double averageDepth;
+  private final long memoryBytes;
+  private final long selectionNanos;
+  private final long rolloutNanos;
+  private final int[] principalVariation;
+  private final List<MoveStats> moveStats;
+
+  public SearchStats(int iterations, long elapsedNanos, int nodes, int maxDepth,
+      double averageDepth, long memoryBytes, long selectionNanos, long rolloutNanos,
+      int[] principalVariation, List<MoveStats> moveStats) {
+    this.iterations = iterations;
+    this.elapsedNanos = elapsedNanos;
+    this.nodes = nodes;
+    this.maxDepth = maxDepth;
+    this.averageDepth = averageDepth;
+    this.memoryBytes = memoryBytes;
+    this.selectionNanos = selectionNanos;
+    this.rolloutNanos = rolloutNanos;
+    this.principalVariation = principalVariation;
+    this.moveStats = moveStats;
+  }
+
+  /**
+   * Returns the number of playouts completed.
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public double getPlayoutsPerSecond() {
+    return elapsedNanos == 0 ? 0 : iterations * 1e9 / elapsedNanos;
+  }
+
+  /**
+   * Returns the number of nodes of the search tree.
+   */
+  public int getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Returns the largest number of tree nodes selected by a playout before its random rollout.
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  public double getAverageDepth() {
+    return averageDepth;
+  }
+
+  /**
+   * Returns the estimated memory of the search tree and of its transposition table, in bytes.
+   */
+  public long getMemoryBytes() {
+    return memoryBytes;
+  }
+
+  /**
+   * Returns the time spent in the tree by all the search threads: selection, expansion and
+   * update of the statistics.
+   */
+  public long getSelectionNanos() {
+    return selectionNanos;
+  }
+
+  /**
+   * Returns the time spent in random rollouts by all the search threads.
+   */
+  public long getRolloutNanos() {
+    return rolloutNanos;
+  }
+
+  /**
+   * Returns the expected continuation: the most visited move from the root, then the most
+   * visited answer, and so on.
+   */
+  public int[] getPrincipalVariation() {
+    return principalVariation.clone();
+  }
+
+  /**
+   * Returns the statistics of the visited moves of the root, most visited first.
+   */
+  public List<MoveStats> getMoveStats() {
+    return moveStats;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SearchStats(playoutsPerSecond=%.0f, nodes=%d, maxDepth=%d, "
+            + "averageDepth=%.1f, memoryBytes=%d, selectionMillis=%d, rolloutMillis=%d, "
+            + "principalVariation=%s, moveStats=%s)", getPlayoutsPerSecond(), nodes, maxDepth,
+        averageDepth, memoryBytes, selectionNanos / 1000000, rolloutNanos / 1000000,
+        Arrays.toString(principalVariation), moveStats);
+  }
+
+  /**
+   * Statistics of a move of the root.
+   */
+  public static class MoveStats {
+    private final int move;
+    private final int visits;
+    private final double winRate;
+
+    public MoveStats(int move, int visits, double winRate) {
+      this.move = move;
+      this.visits = visits;
+      this.winRate = winRate;
+    }
+
+    public int getMove() {
+      return move;
+    }
+
+    public int getVisits() {
+      return visits;
+    }
+
+    /**
+     * Returns the estimated probability, between 0 and 1, that the current player wins by
+     * playing the move.
+     */
+    public double getWinRate() {
+      return winRate;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d:%d/%.3f", move, visits, winRate);
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package com.cauchymop.goblob.model;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Color;
+
+/**
+ * Computes the territories of a board: the regions of empty points and dead stones bordered by
+ * the live stones of a single color.
+ * <p>
+ * The regions are found with a breadth first search on positions, in buffers allocated once for
+ * one board size, so that scoring a board allocates nothing and takes a few microseconds. The
+ * regions are kept with their size and owner, so that marking a stone dead or alive only
+ * updates the regions around it. The same scorer gives the area score of the finished
+ * {@link Playout}s. An instance must only be used by one thread at a time.
+ */
+public class TerritoryScorer {
+
+  private static final int NONE = -1;
+  private static final int EMPTY = 0;
+  private static final int BLACK = 1;
+  private static final int WHITE = 2;
+
+  private final int size;
+  private final int numberOfPositions;
+  // The 4 neighbors of each position, NONE when off board.
+  private final int[] neighbors;
+  // Color of the stone at each position on the board.
+  private final int[] stoneColors;
+  // Color of the live stone at each position, EMPTY for empty points and dead stones.
+  private final int[] colors;
+  // Region of each empty point or dead stone, NONE for live stones.
+  private final int[] regionOf;
+  private final int[] regionSizes;
+  // Color owning each region as territory, EMPTY if none.
+  private final int[] regionOwners;
+  // Unused region labels.
+  private final int[] freeRegions;
+  private int freeRegionCount;
+  private final int[] queue;
+  // Stamp of the last region creation which reached each position.
+  private final int[] stamps;
+  private int stamp;
+  private final BitBoard noDeadStones;
+  private int blackTerritory;
+  private int whiteTerritory;
+  private int blackStones;
+  private int whiteStones;
+
+  public TerritoryScorer(int size) {
+    this.size = size;
+    numberOfPositions = size * size;
+    neighbors = new int[4 * numberOfPositions];
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      int x = pos % size;
+      int y = pos / size;
+      neighbors[4 * pos] = y > 0 ? pos - size : NONE;
+      neighbors[4 * pos + 1] = x > 0 ? pos - 1 : NONE;
+      neighbors[4 * pos + 2] = x < size - 1 ? pos + 1 : NONE;
+      neighbors[4 * pos + 3] = y < size - 1 ? pos + size : NONE;
+    }
+    stoneColors = new int[numberOfPositions];
+    colors = new int[numberOfPositions];
+    regionOf = new int[numberOfPositions];
+    regionSizes = new int[numberOfPositions];
+    regionOwners = new int[numberOfPositions];
+    freeRegions = new int[numberOfPositions];
+    queue = new int[numberOfPositions];
+    stamps = new int[numberOfPositions];
+    noDeadStones = BitBoard.forBoardSize(size);
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Computes the territories and the stones of the board, all the stones being alive.
+   */
+  public void score(GoBoard board) {
+    score(board, noDeadStones);
+  }
+
+  /**
+   * Computes the territories and the live stones of the board, {@code deadStones} being the
+   * positions of the stones to remove.
+   */
+  public void score(GoBoard board, BitBoard deadStones) {
+    blackStones = 0;
+    whiteStones = 0;
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      Color color = board.getColor(pos);
+      stoneColors[pos] = color == null ? EMPTY : color == Color.BLACK ? BLACK : WHITE;
+      colors[pos] = deadStones.get(pos) ? EMPTY : stoneColors[pos];
+      if (colors[pos] == BLACK) {
+        blackStones++;
+      } else if (colors[pos] == WHITE) {
+        whiteStones++;
+      }
+      regionOf[pos] = NONE;
+      stamps[pos] = 0;
+      freeRegions[pos] = numberOfPositions - 1 - pos;
+    }
+    freeRegionCount = numberOfPositions;
+    stamp = 0;
+    blackTerritory = 0;
+    whiteTerritory = 0;
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      if (colors[pos] == EMPTY && regionOf[pos] == NONE) {
+        createRegion(pos);
+      }
+    }
+  }
+
+  /**
+   * Marks the stone of the last scored board at the position dead or alive, and updates the
+   * regions around it.
+   */
+  public void setDeadStone(int pos, boolean dead) {
+    if (stoneColors[pos] == EMPTY || (colors[pos] == EMPTY) == dead) {
+      return;
+    }
+    int delta = dead ? -1 : 1;
+    if (stoneColors[pos] == BLACK) {
+      blackStones += delta;
+    } else {
+      whiteStones += delta;
+    }
+    if (dead) {
+      // The stone joins the regions around it.
+      colors[pos] = EMPTY;
+      for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+        int neighbor = neighbors[i];
+        if (neighbor != NONE && regionOf[neighbor] != NONE) {
+          deleteRegion(regionOf[neighbor]);
+        }
+      }
+      createRegion(pos);
+    } else {
+      // The region of the stone is split by it, in parts which all touch it.
+      deleteRegion(regionOf[pos]);
+      colors[pos] = stoneColors[pos];
+      regionOf[pos] = NONE;
+      int lastStamp = stamp;
+      for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+        int neighbor = neighbors[i];
+        if (neighbor != NONE && colors[neighbor] == EMPTY && stamps[neighbor] <= lastStamp) {
+          createRegion(neighbor);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gives a new region to the empty points and dead stones connected to {@code start}, and to
+   * its owner the territory.
+   */
+  private void createRegion(int start) {
+    int region = freeRegions[--freeRegionCount];
+    stamp++;
+    int end = 0;
+    int borderColors = EMPTY;
+    regionOf[start] = region;
+    stamps[start] = stamp;
+    queue[end++] = start;
+    for (int next = 0; next < end; next++) {
+      int pos = queue[next];
+      for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+        int neighbor = neighbors[i];
+        if (neighbor == NONE) {
+          continue;
+        }
+        if (colors[neighbor] != EMPTY) {
+          borderColors |= colors[neighbor];
+        } else if (stamps[neighbor] != stamp) {
+          regionOf[neighbor] = region;
+          stamps[neighbor] = stamp;
+          queue[end++] = neighbor;
+        }
+      }
+    }
+    regionSizes[region] = end;
+    regionOwners[region] = borderColors == BLACK || borderColors == WHITE ? borderColors : EMPTY;
+    addTerritory(region, end);
+  }
+
+  /**
+   * Frees the region label, and takes the territory back from its owner. The positions keep the
+   * label until they get a new region.
+   */
+  private void deleteRegion(int region) {
+    if (regionSizes[region] == 0) {
+      return;
+    }
+    addTerritory(region, -regionSizes[region]);
+    regionSizes[region] = 0;
+    freeRegions[freeRegionCount++] = region;
+  }
+
+  private void addTerritory(int region, int delta) {
+    if (regionOwners[region] == BLACK) {
+      blackTerritory += delta;
+    } else if (regionOwners[region] == WHITE) {
+      whiteTerritory += delta;
+    }
+  }
+
+  /**
+   * Returns the color owning the position as territory, or null if it's a live stone or a
+   * neutral point.
+   */
+  public Color getTerritoryColor(int pos) {
+    if (colors[pos] != EMPTY) {
+      return null;
+    }
+    switch (regionOwners[regionOf[pos]]) {
+      case BLACK:
+        return Color.BLACK;
+      case WHITE:
+        return Color.WHITE;
+      default:
+        return null;
+    }
+  }
+
+  public int getBlackTerritory() {
+    return blackTerritory;
+  }
+
+  public int getWhiteTerritory() {
+    return whiteTerritory;
+  }
+
+  public int getBlackStones() {
+    return blackStones;
+  }
+
+  public int getWhiteStones() {
+    return whiteStones;
+  }
+
+  /**
+   * Returns the area score of black without komi: its live stones and territory, minus those of
+   * white.
+   */
+  public int getAreaScore() {
+    return blackStones + blackTerritory - whiteStones - whiteTerritory;
+  }
+}
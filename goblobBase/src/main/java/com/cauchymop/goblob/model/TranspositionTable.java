@@ -0,0 +1,152 @@
+package com.cauchymop.goblob.model;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Color;
+
+/**
+ * Bounded table of {@link MonteCarlo} statistics by position, so that the tree nodes reaching the
+ * same position through different move orders share their results.
+ * <p>
+ * Positions are keyed by the Zobrist hash of the board, the side to move and the number of
+ * consecutive passes, as a position after one pass or at the end of the game doesn't have the
+ * value of the same board without passes. The table is made of
+ * buckets of a few entries: a new position replaces the entry of its bucket with the fewest
+ * visits. Updates are lock free; when two threads race on a replacement, a few results may be
+ * lost, which doesn't matter for statistics.
+ */
+public class TranspositionTable {
+
+  public static final int NO_ENTRY = -1;
+
+  private static final int BUCKET_SIZE = 4;
+  private static final long EMPTY_KEY = 0;
+  private static final long WHITE_TO_PLAY_KEY = 0x5bd1e9955bd1e995L;
+  private static final long ONE_PASS_KEY = 0x9e3779b97f4a7c15L;
+  private static final long TWO_PASSES_KEY = 0xc2b2ae3d27d4eb4fL;
+  private static final int BYTES_PER_ENTRY = 16;
+
+  private final int bucketMask;
+  private final AtomicLongArray keys;
+  private final AtomicIntegerArray visits;
+  // Float bits of the total value of each position, for the player who moved into it.
+  private final AtomicIntegerArray valueBits;
+
+  /**
+   * Creates a table of at most {@code maxEntries} entries, each of them using
+   * {@value #BYTES_PER_ENTRY} bytes.
+   */
+  public TranspositionTable(int maxEntries) {
+    int bucketCount = Integer.highestOneBit(Math.max(maxEntries / BUCKET_SIZE, 1));
+    bucketMask = bucketCount - 1;
+    keys = new AtomicLongArray(bucketCount * BUCKET_SIZE);
+    visits = new AtomicIntegerArray(bucketCount * BUCKET_SIZE);
+    valueBits = new AtomicIntegerArray(bucketCount * BUCKET_SIZE);
+  }
+
+  /**
+   * Returns the key of the current position of the game.
+   */
+  public static long getKey(GoGame game) {
+    long key = game.getBoard().getZobristHash();
+    if (game.getCurrentColor() == Color.WHITE) {
+      key ^= WHITE_TO_PLAY_KEY;
+    }
+    if (game.isGameEnd()) {
+      key ^= TWO_PASSES_KEY;
+    } else if (game.isLastMovePass()) {
+      key ^= ONE_PASS_KEY;
+    }
+    return key == EMPTY_KEY ? 1 : key;
+  }
+
+  public int getCapacity() {
+    return keys.length();
+  }
+
+  public long getMemoryBytes() {
+    return (long) getCapacity() * BYTES_PER_ENTRY;
+  }
+
+  /**
+   * Returns the entry of the position, or {@link #NO_ENTRY} if the table doesn't have it.
+   */
+  public int find(long key) {
+    int first = getBucket(key);
+    for (int entry = first; entry < first + BUCKET_SIZE; entry++) {
+      if (keys.get(entry) == key) {
+        return entry;
+      }
+    }
+    return NO_ENTRY;
+  }
+
+  public int getVisits(int entry) {
+    return visits.get(entry);
+  }
+
+  public float getValue(int entry) {
+    return Float.intBitsToFloat(valueBits.get(entry));
+  }
+
+  /**
+   * Adds the result of a game through the position, replacing the least visited position of its
+   * bucket if it's not in the table yet.
+   */
+  public void addResult(long key, float value) {
+    int entry = find(key);
+    if (entry == NO_ENTRY) {
+      entry = replace(key);
+    }
+    visits.incrementAndGet(entry);
+    while (true) {
+      int bits = valueBits.get(entry);
+      int newBits = Float.floatToIntBits(Float.intBitsToFloat(bits) + value);
+      if (valueBits.compareAndSet(entry, bits, newBits)) {
+        return;
+      }
+    }
+  }
+
+  private int replace(long key) {
+    int first = getBucket(key);
+    int replaced = first;
+    for (int entry = first + 1; entry < first + BUCKET_SIZE; entry++) {
+      if (visits.get(entry) < visits.get(replaced)) {
+        replaced = entry;
+      }
+    }
+    keys.set(replaced, key);
+    visits.set(replaced, 0);
+    valueBits.set(replaced, Float.floatToIntBits(0f));
+    return replaced;
+  }
+
+  /**
+   * Halves the statistics of all the positions, so that the positions of a previous search can
+   * be replaced by the positions of the next one. The mean values are kept.
+   */
+  public void age() {
+    for (int entry = 0; entry < keys.length(); entry++) {
+      int entryVisits = visits.get(entry);
+      if (entryVisits > 0) {
+        visits.set(entry, entryVisits / 2);
+        float value = getValue(entry) * (entryVisits / 2) / entryVisits;
+        valueBits.set(entry, Float.floatToIntBits(value));
+      }
+    }
+  }
+
+  public void clear() {
+    for (int entry = 0; entry < keys.length(); entry++) {
+      keys.set(entry, EMPTY_KEY);
+      visits.set(entry, 0);
+      valueBits.set(entry, Float.floatToIntBits(0f));
+    }
+  }
+
+  private int getBucket(long key) {
+    return ((int) (key ^ (key >>> 32)) & bucketMask) * BUCKET_SIZE;
+  }
+}
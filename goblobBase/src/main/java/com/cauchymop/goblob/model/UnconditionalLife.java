@@ -0,0 +1,323 @@
+package com.cauchymop.goblob.model;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Color;
+
+/**
+ * Detects, with Benson's algorithm, the positions where the result of the game can't change
+ * anymore, so that playouts can be scored without being played to the end.
+ * <p>
+ * A position is settled when all the chains are unconditionally alive (each of them has two
+ * vital regions: regions enclosed by its color whose empty points are all its liberties) and
+ * each empty region is a vital region of a chain of its only bordering color. The opponent can't
+ * make an eye in such a region, so its points belong to the color around it.
+ * <p>
+ * The buffers are allocated once, for one board size. An instance must only be used by one
+ * thread at a time.
+ */
+public class UnconditionalLife {
+
+  private static final int NONE = -1;
+  private static final int EMPTY = 0;
+  private static final int BLACK = 1;
+  private static final int WHITE = 2;
+
+  private final int size;
+  private final int numberOfPositions;
+  // The 4 neighbors of each position, NONE when off board.
+  private final int[] neighbors;
+  private final int[] colors;
+  private final int[] chainOf;
+  private final int[] vitalRegionCount;
+  private final int[] regionOf;
+  // Positions of each region, stored region after region.
+  private final int[] regionPositions;
+  private final int[] candidateChains = new int[4];
+  private int areaScore;
+
+  public UnconditionalLife(int size) {
+    this.size = size;
+    numberOfPositions = size * size;
+    neighbors = new int[4 * numberOfPositions];
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      int x = pos % size;
+      int y = pos / size;
+      neighbors[4 * pos] = y > 0 ? pos - size : NONE;
+      neighbors[4 * pos + 1] = x > 0 ? pos - 1 : NONE;
+      neighbors[4 * pos + 2] = x < size - 1 ? pos + 1 : NONE;
+      neighbors[4 * pos + 3] = y < size - 1 ? pos + size : NONE;
+    }
+    colors = new int[numberOfPositions];
+    chainOf = new int[numberOfPositions];
+    vitalRegionCount = new int[numberOfPositions];
+    regionOf = new int[numberOfPositions];
+    regionPositions = new int[numberOfPositions];
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns whether the result of the game on the board can't change anymore.
+   */
+  public boolean isSettled(GoBoard board) {
+    readColors(board);
+    if (hasSharedEmptyPoint()) {
+      return false;
+    }
+    int chainCount = labelChains();
+    for (int chain = 0; chain < chainCount; chain++) {
+      vitalRegionCount[chain] = 0;
+    }
+    if (!countVitalRegions(BLACK) || !countVitalRegions(WHITE)) {
+      return false;
+    }
+    for (int chain = 0; chain < chainCount; chain++) {
+      if (vitalRegionCount[chain] < 2) {
+        return false;
+      }
+    }
+    return scoreEmptyRegions();
+  }
+
+  /**
+   * Returns the area score of black, stones and surrounded points, of the last settled board.
+   */
+  public int getAreaScore() {
+    return areaScore;
+  }
+
+  private void readColors(GoBoard board) {
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      Color color = board.getColor(pos);
+      colors[pos] = color == null ? EMPTY : color == Color.BLACK ? BLACK : WHITE;
+    }
+  }
+
+  /**
+   * Returns whether an empty point touches both colors, which is a cheap way to reject most
+   * unsettled positions: its region would border both colors.
+   */
+  private boolean hasSharedEmptyPoint() {
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      if (colors[pos] != EMPTY) {
+        continue;
+      }
+      int neighborColors = 0;
+      for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+        if (neighbors[i] != NONE) {
+          neighborColors |= colors[neighbors[i]];
+        }
+      }
+      if (neighborColors == (BLACK | WHITE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gives the same id to the stones of each chain. Returns the number of chains.
+   */
+  private int labelChains() {
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      chainOf[pos] = NONE;
+    }
+    int chainCount = 0;
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      if (colors[pos] != EMPTY && chainOf[pos] == NONE) {
+        flood(pos, colors[pos], chainOf, chainCount++);
+      }
+    }
+    return chainCount;
+  }
+
+  /**
+   * Splits the points which are not of the given color into regions, and counts the regions
+   * vital to each chain of the color. Returns false when a region has no empty point, which
+   * can't be settled.
+   */
+  private boolean countVitalRegions(int color) {
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      regionOf[pos] = NONE;
+    }
+    int regionCount = 0;
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      if (colors[pos] == color || regionOf[pos] != NONE) {
+        continue;
+      }
+      int end = floodRegion(pos, color, regionCount++);
+      int firstEmpty = getFirstEmpty(end);
+      if (firstEmpty == NONE) {
+        return false;
+      }
+      // A vital chain is a neighbor of every empty point, of the first one in particular.
+      int candidateCount = getAdjacentChains(firstEmpty, color);
+      for (int i = 0; i < candidateCount; i++) {
+        if (isVital(candidateChains[i], end)) {
+          vitalRegionCount[candidateChains[i]]++;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks that each empty region is vital to a chain of its only bordering color, and computes
+   * the area score.
+   */
+  private boolean scoreEmptyRegions() {
+    areaScore = 0;
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      regionOf[pos] = NONE;
+      if (colors[pos] == BLACK) {
+        areaScore++;
+      } else if (colors[pos] == WHITE) {
+        areaScore--;
+      }
+    }
+    int regionCount = 0;
+    for (int pos = 0; pos < numberOfPositions; pos++) {
+      if (colors[pos] != EMPTY || regionOf[pos] != NONE) {
+        continue;
+      }
+      int end = flood(pos, EMPTY, regionOf, regionCount++);
+      int owner = getBorderColor(end);
+      if (owner == NONE) {
+        return false;
+      }
+      int candidateCount = getAdjacentChains(pos, owner);
+      boolean vital = false;
+      for (int i = 0; i < candidateCount && !vital; i++) {
+        vital = isVital(candidateChains[i], end);
+      }
+      if (!vital) {
+        return false;
+      }
+      areaScore += owner == BLACK ? end : -end;
+    }
+    return true;
+  }
+
+  /**
+   * Labels with {@code label} the connected points of the given color from {@code start}, and
+   * lists them in {@link #regionPositions}. Returns the end of the list.
+   */
+  private int flood(int start, int color, int[] labels, int label) {
+    int end = 0;
+    labels[start] = label;
+    regionPositions[end++] = start;
+    for (int next = 0; next < end; next++) {
+      int pos = regionPositions[next];
+      for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+        int neighbor = neighbors[i];
+        if (neighbor != NONE && colors[neighbor] == color && labels[neighbor] == NONE) {
+          labels[neighbor] = label;
+          regionPositions[end++] = neighbor;
+        }
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Labels the connected points which are not of {@code enclosingColor} from {@code start}, and
+   * lists them in {@link #regionPositions}. Returns the end of the list.
+   */
+  private int floodRegion(int start, int enclosingColor, int label) {
+    int end = 0;
+    regionOf[start] = label;
+    regionPositions[end++] = start;
+    for (int next = 0; next < end; next++) {
+      int pos = regionPositions[next];
+      for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+        int neighbor = neighbors[i];
+        if (neighbor != NONE && colors[neighbor] != enclosingColor && regionOf[neighbor] == NONE) {
+          regionOf[neighbor] = label;
+          regionPositions[end++] = neighbor;
+        }
+      }
+    }
+    return end;
+  }
+
+  private int getFirstEmpty(int end) {
+    for (int i = 0; i < end; i++) {
+      if (colors[regionPositions[i]] == EMPTY) {
+        return regionPositions[i];
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * Returns the only color of the stones around the listed empty region, or NONE if it touches
+   * both colors or none.
+   */
+  private int getBorderColor(int end) {
+    int border = EMPTY;
+    for (int i = 0; i < end; i++) {
+      int pos = regionPositions[i];
+      for (int j = 4 * pos; j < 4 * pos + 4; j++) {
+        int neighbor = neighbors[j];
+        if (neighbor == NONE || colors[neighbor] == EMPTY) {
+          continue;
+        }
+        if (border == EMPTY) {
+          border = colors[neighbor];
+        } else if (border != colors[neighbor]) {
+          return NONE;
+        }
+      }
+    }
+    return border == EMPTY ? NONE : border;
+  }
+
+  /**
+   * Fills {@link #candidateChains} with the distinct chains of the given color around a point,
+   * and returns their number.
+   */
+  private int getAdjacentChains(int pos, int color) {
+    int count = 0;
+    for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+      int neighbor = neighbors[i];
+      if (neighbor != NONE && colors[neighbor] == color
+          && !contains(candidateChains, count, chainOf[neighbor])) {
+        candidateChains[count++] = chainOf[neighbor];
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns whether all the empty points of the listed region are liberties of the chain.
+   */
+  private boolean isVital(int chain, int end) {
+    for (int i = 0; i < end; i++) {
+      int pos = regionPositions[i];
+      if (colors[pos] == EMPTY && !isLiberty(pos, chain)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isLiberty(int pos, int chain) {
+    for (int i = 4 * pos; i < 4 * pos + 4; i++) {
+      int neighbor = neighbors[i];
+      if (neighbor != NONE && chainOf[neighbor] == chain) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean contains(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
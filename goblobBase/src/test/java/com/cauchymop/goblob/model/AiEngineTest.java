@@ -0,0 +1,162 @@
+package com.cauchymop.goblob.model;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Move;
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link AiEngine}.
+ */
+public class AiEngineTest {
+
+  private static final SearchConfig CONFIG = SearchConfig.newBuilder().setSeed(0).build();
+
+  private ExecutorService executor;
+  private AiEngine engine;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(2);
+    engine = new AiEngine(new GameDatas(null), executor);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testPlayMove() throws Exception {
+    GoGame game = new GoGame(5, 0);
+    ListenableFuture<Move> future = engine.playMove(game, newSession(),
+        SearchBudget.ofIterations(200), null);
+
+    Move move = future.get(10, TimeUnit.SECONDS);
+
+    assertThat(move.getType()).isEqualTo(Move.MoveType.MOVE);
+    assertThat(game.play(game.getPos(move.getPosition().getX(), move.getPosition().getY())))
+        .isTrue();
+  }
+
+  @Test
+  public void testPlayMove_noMoveFound() throws Exception {
+    ListenableFuture<Move> future = engine.playMove(new GoGame(5, 0), newSession(),
+        SearchBudget.ofIterations(0), null);
+
+    assertThat(future.get(10, TimeUnit.SECONDS).getType()).isEqualTo(Move.MoveType.PASS);
+  }
+
+  @Test
+  public void testPlayMove_leavesGameUnchanged() throws Exception {
+    GoGame game = new GoGame(5, 0);
+    ListenableFuture<Move> future = engine.playMove(game, newSession(),
+        SearchBudget.ofIterations(200), null);
+    game.play(game.getPos(2, 2));
+
+    future.get(10, TimeUnit.SECONDS);
+
+    assertThat(game.getMoveCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testPlayMove_reportsProgress() throws Exception {
+    final AtomicInteger progressCount = new AtomicInteger();
+    SearchListener listener = new SearchListener() {
+      @Override
+      public void onProgress(SearchResult progress) {
+        progressCount.incrementAndGet();
+      }
+
+      @Override
+      public void onSearchEnd(SearchResult result) {
+      }
+    };
+
+    engine.playMove(new GoGame(5, 0), newSession(), SearchBudget.ofTime(300), listener)
+        .get(10, TimeUnit.SECONDS);
+
+    assertThat(progressCount.get()).isGreaterThan(0);
+  }
+
+  @Test
+  public void testPlayMove_cancelled() throws Exception {
+    ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+    AiEngine singleThreadEngine = new AiEngine(new GameDatas(null), singleThreadExecutor);
+    SearchSession session = newSession();
+    ListenableFuture<Move> future = singleThreadEngine.playMove(new GoGame(9, 0), session,
+        SearchBudget.ofTime(60000), null);
+    Thread.sleep(50);
+
+    assertThat(future.cancel(false)).isTrue();
+
+    // The next search only runs once the cancelled one has stopped.
+    singleThreadEngine.playMove(new GoGame(9, 0), session, SearchBudget.ofIterations(10), null)
+        .get(10, TimeUnit.SECONDS);
+    singleThreadExecutor.shutdown();
+  }
+
+  @Test
+  public void testPlayMove_waitsForSession() throws Exception {
+    SearchSession session = newSession();
+    session.acquire();
+    ListenableFuture<Move> future = engine.playMove(new GoGame(5, 0), session,
+        SearchBudget.ofIterations(10), null);
+    Thread.sleep(50);
+
+    assertThat(future.isDone()).isFalse();
+    session.release();
+    future.get(10, TimeUnit.SECONDS);
+    assertThat(session.tryAcquire()).isTrue();
+  }
+
+  @Test
+  public void testPlayMove_concurrentMatches() throws Exception {
+    ListenableFuture<Move> first = engine.playMove(new GoGame(5, 0), newSession(),
+        SearchBudget.ofIterations(200), null);
+    ListenableFuture<Move> second = engine.playMove(new GoGame(7, 0), newSession(),
+        SearchBudget.ofIterations(200), null);
+
+    assertThat(first.get(10, TimeUnit.SECONDS).hasPosition()).isTrue();
+    assertThat(second.get(10, TimeUnit.SECONDS).hasPosition()).isTrue();
+  }
+
+  @Test
+  public void testSuggestDeadStones() throws Exception {
+    GoGame game = new GoGame(9, 0);
+    // Black walls in the white stone, which is left in atari.
+    game.play(game.getPos(4, 3));
+    game.play(game.getPos(4, 4));
+    game.play(game.getPos(4, 5));
+    game.play(game.getPassValue());
+    game.play(game.getPos(3, 4));
+    for (int y = 0; y < 9; y++) {
+      game.play(game.getPassValue());
+      game.play(game.getPos(2, y));
+      game.play(game.getPassValue());
+      game.play(game.getPos(6, y));
+    }
+    game.play(game.getPassValue());
+    game.play(game.getPassValue());
+    int moveCount = game.getMoveCount();
+
+    BitBoard deadStones = engine.suggestDeadStones(game).get(10, TimeUnit.SECONDS);
+
+    assertThat(deadStones.nextSetBit(0)).isEqualTo(game.getPos(4, 4));
+    assertThat(deadStones.nextSetBit(game.getPos(4, 4) + 1)).isEqualTo(-1);
+    assertThat(game.getMoveCount()).isEqualTo(moveCount);
+  }
+
+  private static SearchSession newSession() {
+    return new SearchSession(100000, CONFIG);
+  }
+}
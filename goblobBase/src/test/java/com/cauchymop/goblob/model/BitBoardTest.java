@@ -0,0 +1,80 @@
+package com.cauchymop.goblob.model;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link BitBoard}.
+ */
+public class BitBoardTest {
+
+  private static final int[] BOARD_SIZES = {5, 9, 13, 19};
+
+  @Test
+  public void testSetAndClear() {
+    BitBoard bitBoard = BitBoard.forBoardSize(9);
+    bitBoard.set(3);
+    bitBoard.set(80);
+    bitBoard.set(64, true);
+    bitBoard.clear(3);
+    assertThat(bitBoard.get(3)).isFalse();
+    assertThat(bitBoard.get(64)).isTrue();
+    assertThat(bitBoard.get(80)).isTrue();
+    assertThat(bitBoard.cardinality()).isEqualTo(2);
+    assertThat(bitBoard.toString()).isEqualTo("{64, 80}");
+  }
+
+  @Test
+  public void testClear() {
+    BitBoard bitBoard = BitBoard.forBoardSize(19);
+    bitBoard.set(360);
+    bitBoard.clear();
+    assertThat(bitBoard.isEmpty()).isTrue();
+    assertThat(bitBoard).isEqualTo(BitBoard.forBoardSize(19));
+  }
+
+  @Test
+  public void testOperations_sameAsBitSet() {
+    Random random = new Random(0);
+    for (int boardSize : BOARD_SIZES) {
+      int numberOfPositions = boardSize * boardSize;
+      for (int iteration = 0; iteration < 20; iteration++) {
+        BitSet bitSet1 = new BitSet();
+        BitSet bitSet2 = new BitSet();
+        BitBoard bitBoard1 = BitBoard.forBoardSize(boardSize);
+        BitBoard bitBoard2 = BitBoard.forBoardSize(boardSize);
+        int count = random.nextInt(numberOfPositions);
+        for (int i = 0; i < count; i++) {
+          int index1 = random.nextInt(numberOfPositions);
+          int index2 = random.nextInt(numberOfPositions);
+          bitSet1.set(index1);
+          bitBoard1.set(index1);
+          bitSet2.set(index2);
+          bitBoard2.set(index2);
+        }
+        assertSame(bitSet1, bitBoard1, numberOfPositions);
+
+        bitSet1.or(bitSet2);
+        bitBoard1.or(bitBoard2);
+        assertSame(bitSet1, bitBoard1, numberOfPositions);
+
+        bitSet1.and(bitSet2);
+        bitBoard1.and(bitBoard2);
+        assertSame(bitSet1, bitBoard1, numberOfPositions);
+      }
+    }
+  }
+
+  private void assertSame(BitSet bitSet, BitBoard bitBoard, int numberOfPositions) {
+    assertThat(bitBoard.cardinality()).isEqualTo(bitSet.cardinality());
+    assertThat(bitBoard.isEmpty()).isEqualTo(bitSet.isEmpty());
+    for (int index = 0; index < numberOfPositions; index++) {
+      assertThat(bitBoard.get(index)).isEqualTo(bitSet.get(index));
+      assertThat(bitBoard.nextSetBit(index)).isEqualTo(bitSet.nextSetBit(index));
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package com.cauchymop.goblob.model;
+
+import com.cauchymop.goblob.proto.PlayGameData;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.cauchymop.goblob.proto.PlayGameData.GameData;
+import static com.cauchymop.goblob.proto.PlayGameData.GameList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link GameStore}.
+ */
+public class GameStoreTest {
+
+  private static final GameDatas GAME_DATAS = new GameDatas(null);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File file;
+  private GameStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    file = new File(folder.getRoot(), "games");
+    store = new GameStore(file);
+  }
+
+  @Test
+  public void testLoad_noFile() throws Exception {
+    GameList.Builder gameList = store.load();
+
+    assertThat(gameList.getGamesMap()).isEmpty();
+    assertThat(gameList.getUnpublishedMap()).isEmpty();
+  }
+
+  @Test
+  public void testPutGame() throws Exception {
+    store.load();
+    GameData game = createGame("match1", 1);
+    store.putGame(game);
+    store.putGame(createGame("match2", 1));
+    GameData updatedGame = createGame("match2", 2);
+    store.putGame(updatedGame);
+
+    GameList.Builder gameList = new GameStore(file).load();
+
+    assertThat(gameList.getGamesMap()).hasSize(2);
+    assertThat(gameList.getGamesMap().get("match1")).isEqualTo(game);
+    assertThat(gameList.getGamesMap().get("match2")).isEqualTo(updatedGame);
+  }
+
+  @Test
+  public void testRemoveGame() throws Exception {
+    store.load();
+    store.putGame(createGame("match1", 1));
+    store.putGame(createGame("match2", 1));
+    store.removeGame("match1");
+
+    GameList.Builder gameList = new GameStore(file).load();
+
+    assertThat(gameList.getGamesMap().keySet()).containsOnly("match2");
+  }
+
+  @Test
+  public void testSetUnpublished() throws Exception {
+    store.load();
+    store.setUnpublished("match1", true);
+    store.setUnpublished("match2", true);
+    store.setUnpublished("match1", false);
+
+    GameList.Builder gameList = new GameStore(file).load();
+
+    assertThat(gameList.getUnpublishedMap().keySet()).containsOnly("match2");
+  }
+
+  @Test
+  public void testLoad_truncatedRecord() throws Exception {
+    store.load();
+    GameData game = createGame("match1", 1);
+    store.putGame(game);
+    long validLength = file.length();
+    store.putGame(createGame("match1", 2));
+    truncate(file.length() - 1);
+
+    GameStore reloadedStore = new GameStore(file);
+    GameList.Builder gameList = reloadedStore.load();
+
+    assertThat(gameList.getGamesMap().get("match1")).isEqualTo(game);
+    assertThat(file.length()).isEqualTo(validLength);
+    GameData updatedGame = createGame("match1", 3);
+    reloadedStore.putGame(updatedGame);
+    assertThat(new GameStore(file).load().getGamesMap().get("match1")).isEqualTo(updatedGame);
+  }
+
+  @Test
+  public void testPutGame_failedWrite() throws Exception {
+    final boolean[] failWrite = {false};
+    store = new GameStore(file) {
+      @Override
+      OutputStream openForAppend() throws IOException {
+        if (!failWrite[0]) {
+          return super.openForAppend();
+        }
+        // Writes the first bytes of the record, then fails.
+        return new FilterOutputStream(super.openForAppend()) {
+          @Override
+          public void write(byte[] bytes) throws IOException {
+            out.write(bytes, 0, 4);
+            throw new IOException("No space left");
+          }
+        };
+      }
+    };
+    store.load();
+    GameData game = createGame("match1", 1);
+    store.putGame(game);
+    long validLength = file.length();
+    failWrite[0] = true;
+    try {
+      store.putGame(createGame("match1", 2));
+      fail();
+    } catch (IOException expected) {
+    }
+    failWrite[0] = false;
+
+    assertThat(file.length()).isEqualTo(validLength);
+    assertThat(store.getLogBytes()).isEqualTo(validLength);
+    GameData otherGame = createGame("match2", 1);
+    store.putGame(otherGame);
+    store.compact();
+    GameList.Builder gameList = new GameStore(file).load();
+    assertThat(gameList.getGamesMap().get("match1")).isEqualTo(game);
+    assertThat(gameList.getGamesMap().get("match2")).isEqualTo(otherGame);
+  }
+
+  @Test
+  public void testLoad_truncatedRecord_compacts() throws Exception {
+    store.load();
+    store.putGame(createGame("match1", 1));
+    store.putGame(createGame("match2", 1));
+    truncate(file.length() - 1);
+
+    GameStore reloadedStore = new GameStore(file);
+    reloadedStore.load();
+    assertThat(reloadedStore.getLogBytes()).isEqualTo(file.length());
+    GameData game = createGame("match1", 2);
+    reloadedStore.putGame(game);
+    reloadedStore.compact();
+
+    GameList.Builder gameList = new GameStore(file).load();
+    assertThat(gameList.getGamesMap().keySet()).containsOnly("match1");
+    assertThat(gameList.getGamesMap().get("match1")).isEqualTo(game);
+  }
+
+  @Test
+  public void testLoad_invalidRecord() throws Exception {
+    store.load();
+    GameData game = createGame("match1", 1);
+    store.putGame(game);
+    // A record of 3 bytes announcing a field of 5 bytes.
+    append(new byte[] {3, 0x0A, 5, 1});
+    store = new GameStore(file);
+    store.load();
+    GameData otherGame = createGame("match2", 1);
+    store.putGame(otherGame);
+
+    GameList.Builder gameList = new GameStore(file).load();
+
+    assertThat(gameList.getGamesMap()).hasSize(2);
+    assertThat(gameList.getGamesMap().get("match1")).isEqualTo(game);
+    assertThat(gameList.getGamesMap().get("match2")).isEqualTo(otherGame);
+  }
+
+  @Test(expected = IOException.class)
+  public void testLoad_invalidLength() throws Exception {
+    store.load();
+    store.putGame(createGame("match1", 1));
+    // A length varint which never ends, in the middle of the log.
+    append(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+        (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 1});
+    store.putGame(createGame("match2", 1));
+
+    new GameStore(file).load();
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    store.load();
+    store.putGame(createGame("match1", 1));
+    store.putGame(createGame("match2", 1));
+    store.putGame(createGame("match1", 2));
+    store.removeGame("match2");
+    store.setUnpublished("match1", true);
+    long logBytes = store.getLogBytes();
+
+    store.compact();
+
+    assertThat(store.getLogBytes()).isLessThan(logBytes);
+    assertThat(file.length()).isEqualTo(store.getLogBytes());
+    GameList.Builder gameList = new GameStore(file).load();
+    assertThat(gameList.getGamesMap()).hasSize(1);
+    assertThat(gameList.getGamesMap().get("match1").getSequenceNumber()).isEqualTo(2);
+    assertThat(gameList.getUnpublishedMap().keySet()).containsOnly("match1");
+  }
+
+  @Test
+  public void testPutGame_compactsLog() throws Exception {
+    store.load();
+    GameData game = null;
+    for (int i = 0; i < 10000; i++) {
+      game = createGame("match1", i);
+      store.putGame(game);
+    }
+
+    assertThat(store.getLogBytes()).isLessThan(GameStore.COMPACTION_RATIO * 64 * 1024);
+    assertThat(new GameStore(file).load().getGamesMap().get("match1")).isEqualTo(game);
+  }
+
+  private static GameData createGame(String matchId, int sequenceNumber) {
+    PlayGameData.GoPlayer black = GAME_DATAS.createGamePlayer("pipo", "player1");
+    PlayGameData.GoPlayer white = GAME_DATAS.createGamePlayer("bimbo", "player2");
+    return GAME_DATAS.createNewGameData(matchId, PlayGameData.GameType.LOCAL, black, white)
+        .toBuilder()
+        .setSequenceNumber(sequenceNumber)
+        .build();
+  }
+
+  private void append(byte[] bytes) throws IOException {
+    FileOutputStream output = new FileOutputStream(file, true);
+    try {
+      output.write(bytes);
+    } finally {
+      output.close();
+    }
+  }
+
+  private void truncate(long length) throws IOException {
+    FileOutputStream output = new FileOutputStream(file, true);
+    try {
+      output.getChannel().truncate(length);
+    } finally {
+      output.close();
+    }
+  }
+}
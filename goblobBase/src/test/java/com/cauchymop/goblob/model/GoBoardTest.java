@@ -1,8 +1,15 @@
 package com.cauchymop.goblob.model;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 import static com.cauchymop.goblob.proto.PlayGameData.Color;
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -81,4 +88,274 @@ public class GoBoardTest {
     goBoard.clear();
     assertThat(goBoard).isEqualTo(new GoBoard(5));
   }
+
+  @Test
+  public void testGetZobristHash_sameBoardSameHash() {
+    GoBoard goBoard1 = new GoBoard(5);
+    goBoard1.play(Color.BLACK, goBoard1.getPos(0, 0));
+    goBoard1.play(Color.WHITE, goBoard1.getPos(1, 1));
+    GoBoard goBoard2 = new GoBoard(5);
+    goBoard2.play(Color.WHITE, goBoard2.getPos(1, 1));
+    goBoard2.play(Color.BLACK, goBoard2.getPos(0, 0));
+    assertThat(goBoard1.getZobristHash()).isEqualTo(goBoard2.getZobristHash());
+    assertThat(goBoard1.getZobristHash()).isNotEqualTo(new GoBoard(5).getZobristHash());
+  }
+
+  @Test
+  public void testGetZobristHash_capture() {
+    GoBoard goBoard = new GoBoard(5);
+    goBoard.play(Color.WHITE, goBoard.getPos(0, 1));
+    long hashBefore = goBoard.getZobristHash();
+    goBoard.play(Color.BLACK, goBoard.getPos(0, 0));
+    goBoard.play(Color.WHITE, goBoard.getPos(1, 0));  // Capture.
+
+    GoBoard expected = new GoBoard(5);
+    expected.play(Color.WHITE, expected.getPos(0, 1));
+    expected.play(Color.WHITE, expected.getPos(1, 0));
+    assertThat(goBoard.getZobristHash()).isEqualTo(expected.getZobristHash());
+    assertThat(goBoard.getZobristHash()).isNotEqualTo(hashBefore);
+  }
+
+  @Test
+  public void testGetZobristHash_clear() {
+    GoBoard goBoard = new GoBoard(5);
+    goBoard.play(Color.BLACK, goBoard.getPos(0, 0));
+    goBoard.clear();
+    assertThat(goBoard.getZobristHash()).isEqualTo(new GoBoard(5).getZobristHash());
+  }
+
+  @Test
+  public void testUndo() {
+    GoBoard goBoard = new GoBoard(5);
+    goBoard.play(Color.WHITE, goBoard.getPos(0, 1));
+    goBoard.play(Color.BLACK, goBoard.getPos(0, 0));
+    String textBoard = TextBoard.toString(goBoard);
+    goBoard.play(Color.WHITE, goBoard.getPos(1, 0));  // Capture.
+    goBoard.undo();
+    assertThat(TextBoard.toString(goBoard)).isEqualTo(textBoard);
+    assertThat(goBoard.getUndoCount()).isEqualTo(2);
+
+    goBoard.undo();
+    goBoard.undo();
+    assertThat(goBoard).isEqualTo(new GoBoard(5));
+    assertThat(goBoard.getZobristHash()).isEqualTo(new GoBoard(5).getZobristHash());
+  }
+
+  @Test
+  public void testUndo_invalidMove() {
+    GoBoard goBoard = new GoBoard(5);
+    goBoard.play(Color.BLACK, goBoard.getPos(0, 0));
+    String textBoard = TextBoard.toString(goBoard);
+    Assert.assertFalse(goBoard.play(Color.WHITE, goBoard.getPos(0, 0)));
+    goBoard.undo();
+    assertThat(TextBoard.toString(goBoard)).isEqualTo(textBoard);
+    assertThat(goBoard.getUndoCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testUndo_randomGame() {
+    Random random = new Random(0);
+    GoBoard goBoard = new GoBoard(5);
+    List<String> textBoards = Lists.newArrayList(TextBoard.toString(goBoard));
+    Color color = Color.BLACK;
+    for (int i = 0; i < 200; i++) {
+      if (goBoard.play(color, random.nextInt(25))) {
+        textBoards.add(TextBoard.toString(goBoard));
+        color = GoBoard.getOpponent(color);
+      } else {
+        goBoard.undo();
+      }
+    }
+    for (int index = textBoards.size() - 1; index > 0; index--) {
+      assertThat(TextBoard.toString(goBoard)).isEqualTo(textBoards.get(index));
+      goBoard.undo();
+    }
+    assertThat(goBoard).isEqualTo(new GoBoard(5));
+  }
+
+  @Test
+  public void testHasSameStones() {
+    GoBoard goBoard = new GoBoard(5);
+    goBoard.play(Color.WHITE, goBoard.getPos(0, 1));
+    goBoard.play(Color.BLACK, goBoard.getPos(0, 0));
+    goBoard.play(Color.WHITE, goBoard.getPos(1, 0));  // Capture.
+    goBoard.play(Color.BLACK, goBoard.getPos(0, 0));  // Illegal, but still changes the stones.
+    assertThat(goBoard.hasSameStones(4)).isTrue();
+    assertThat(goBoard.hasSameStones(3)).isFalse();
+    assertThat(goBoard.hasSameStones(0)).isFalse();
+    goBoard.undo();
+    assertThat(goBoard.hasSameStones(1)).isFalse();
+  }
+
+  @Test
+  public void testIsEyeFilling() {
+    GoBoard goBoard = new GoBoard(5);
+    goBoard.play(Color.BLACK, goBoard.getPos(1, 0));
+    goBoard.play(Color.BLACK, goBoard.getPos(0, 1));
+    Assert.assertTrue(goBoard.isEyeFilling(goBoard.getPos(0, 0), Color.BLACK));
+    Assert.assertFalse(goBoard.isEyeFilling(goBoard.getPos(0, 0), Color.WHITE));
+
+    goBoard.play(Color.WHITE, goBoard.getPos(2, 0));
+    goBoard.play(Color.WHITE, goBoard.getPos(1, 1));  // (1, 0) is in atari.
+    Assert.assertFalse(goBoard.isEyeFilling(goBoard.getPos(0, 0), Color.BLACK));
+  }
+
+  @Test
+  public void testIsEyeFilling_sharedLiberty() {
+    GoBoard goBoard = new GoBoard(5);
+    goBoard.play(Color.BLACK, goBoard.getPos(1, 0));
+    goBoard.play(Color.BLACK, goBoard.getPos(1, 1));
+    goBoard.play(Color.BLACK, goBoard.getPos(0, 1));
+    goBoard.play(Color.WHITE, goBoard.getPos(2, 0));
+    goBoard.play(Color.WHITE, goBoard.getPos(2, 1));
+    goBoard.play(Color.WHITE, goBoard.getPos(1, 2));
+    // (0, 0) is counted twice in the liberties of the group, which also has (0, 2).
+    Assert.assertTrue(goBoard.isEyeFilling(goBoard.getPos(0, 0), Color.BLACK));
+
+    goBoard.play(Color.WHITE, goBoard.getPos(0, 2));
+    Assert.assertFalse(goBoard.isEyeFilling(goBoard.getPos(0, 0), Color.BLACK));
+  }
+
+  @Test
+  public void testUndo_sameAsReplay() {
+    Random random = new Random(1);
+    GoBoard goBoard = new GoBoard(7);
+    List<Integer> moves = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      if (!moves.isEmpty() && random.nextInt(4) == 0) {
+        goBoard.undo();
+        moves.remove(moves.size() - 1);
+        continue;
+      }
+      int move = random.nextInt(49);
+      if (goBoard.play(getColor(moves.size()), move)) {
+        moves.add(move);
+      } else {
+        goBoard.undo();
+      }
+    }
+
+    GoBoard replayedBoard = new GoBoard(7);
+    for (int index = 0; index < moves.size(); index++) {
+      replayedBoard.play(getColor(index), moves.get(index));
+    }
+    assertThat(goBoard).isEqualTo(replayedBoard);
+    for (int pos = 0; pos < 49; pos++) {
+      assertThat(goBoard.isEyeFilling(pos, Color.BLACK))
+          .isEqualTo(replayedBoard.isEyeFilling(pos, Color.BLACK));
+      assertThat(goBoard.isEyeFilling(pos, Color.WHITE))
+          .isEqualTo(replayedBoard.isEyeFilling(pos, Color.WHITE));
+    }
+  }
+
+  @Test
+  public void testGetEmptyPosition() {
+    Random random = new Random(2);
+    GoBoard goBoard = new GoBoard(5);
+    for (int i = 0; i < 300; i++) {
+      if (!goBoard.play(getColor(i), random.nextInt(25)) || random.nextInt(5) == 0) {
+        goBoard.undo();
+      }
+      Set<Integer> emptyPositions = Sets.newHashSet();
+      for (int index = 0; index < goBoard.getEmptyCount(); index++) {
+        emptyPositions.add(goBoard.getEmptyPosition(index));
+      }
+      for (int pos = 0; pos < 25; pos++) {
+        assertThat(emptyPositions.contains(pos)).isEqualTo(goBoard.getColor(pos) == null);
+      }
+    }
+  }
+
+  @Test
+  public void testGetPatternCode() {
+    GoBoard goBoard = new GoBoard(5);
+    goBoard.play(Color.BLACK, goBoard.getPos(1, 0));
+    goBoard.play(Color.WHITE, goBoard.getPos(0, 1));
+
+    // Off board on the top row and on the left, then black on the right and white below.
+    assertThat(goBoard.getPatternCode(goBoard.getPos(0, 0))).isEqualTo(
+        3 | 3 << 2 | 3 << 4 | 3 << 6 | 1 << 8 | 3 << 10 | 2 << 12);
+  }
+
+  @Test
+  public void testGetPatternCode_incremental() {
+    Random random = new Random(3);
+    GoBoard goBoard = new GoBoard(5);
+    for (int i = 0; i < 300; i++) {
+      if (!goBoard.play(getColor(i), random.nextInt(25)) || random.nextInt(5) == 0) {
+        goBoard.undo();
+      }
+      for (int pos = 0; pos < 25; pos++) {
+        assertThat(goBoard.getPatternCode(pos)).isEqualTo(computePatternCode(goBoard, pos));
+      }
+    }
+  }
+
+  @Test
+  public void testIsInAtari() {
+    GoBoard goBoard = new GoBoard(5);
+    goBoard.play(Color.BLACK, goBoard.getPos(1, 1));
+    goBoard.play(Color.BLACK, goBoard.getPos(1, 2));
+    goBoard.play(Color.WHITE, goBoard.getPos(0, 1));
+    goBoard.play(Color.WHITE, goBoard.getPos(0, 2));
+    goBoard.play(Color.WHITE, goBoard.getPos(1, 0));
+    goBoard.play(Color.WHITE, goBoard.getPos(2, 1));
+    assertThat(goBoard.isInAtari(goBoard.getPos(1, 1))).isFalse();
+
+    goBoard.play(Color.WHITE, goBoard.getPos(2, 2));
+
+    assertThat(goBoard.isInAtari(goBoard.getPos(1, 1))).isTrue();
+    assertThat(goBoard.getAtariLiberty(goBoard.getPos(1, 2))).isEqualTo(goBoard.getPos(1, 3));
+    assertThat(goBoard.isInAtari(goBoard.getPos(2, 2))).isFalse();
+    assertThat(goBoard.isInAtari(goBoard.getPos(4, 4))).isFalse();
+  }
+
+  @Test
+  public void testIsSelfAtari() {
+    GoBoard goBoard = new GoBoard(5);
+    TextBoard.fillBoard(goBoard,
+        ". ● ○ . .\n" +
+        "● ○ ○ . .\n" +
+        ". ● . . .\n" +
+        ". . . . .\n" +
+        ". . . . .\n");
+    Color black = goBoard.getColor(1, 0);
+    Color white = goBoard.getColor(2, 0);
+
+    // Connecting two stones with a single liberty left.
+    assertThat(goBoard.isSelfAtari(goBoard.getPos(0, 0), black)).isTrue();
+    // Capturing a stone.
+    assertThat(goBoard.isSelfAtari(goBoard.getPos(0, 0), white)).isFalse();
+    // Playing between the opponent stones.
+    assertThat(goBoard.isSelfAtari(goBoard.getPos(0, 2), white)).isTrue();
+    assertThat(goBoard.isSelfAtari(goBoard.getPos(2, 2), black)).isFalse();
+    assertThat(goBoard.isSelfAtari(goBoard.getPos(3, 1), white)).isFalse();
+  }
+
+  private int computePatternCode(GoBoard goBoard, int pos) {
+    int x = pos % 5;
+    int y = pos / 5;
+    int code = 0;
+    int slot = 0;
+    for (int dy = -1; dy <= 1; dy++) {
+      for (int dx = -1; dx <= 1; dx++) {
+        if (dx == 0 && dy == 0) {
+          continue;
+        }
+        int color;
+        if (x + dx < 0 || x + dx >= 5 || y + dy < 0 || y + dy >= 5) {
+          color = 3;
+        } else {
+          Color stone = goBoard.getColor(x + dx, y + dy);
+          color = stone == null ? 0 : stone == Color.BLACK ? 1 : 2;
+        }
+        code |= color << (2 * slot++);
+      }
+    }
+    return code;
+  }
+
+  private Color getColor(int moveIndex) {
+    return (moveIndex % 2 == 0) ? Color.BLACK : Color.WHITE;
+  }
 }
@@ -64,6 +64,73 @@ public class GoGameControllerTest {
     assertThat(controllerGameData.getTurn()).isEqualTo(PlayGameData.Color.WHITE);
   }
 
+  @Test
+  public void testPlayMoveOrToggleDeadStone_updatesScore() {
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createMove(0, 0));
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createMove(1, 1));
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createPassMove());
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createPassMove());
+    float komi = controller.getGameConfiguration().getKomi();
+    int size = controller.getGameConfiguration().getBoardSize();
+    assertThat(controller.getScore().getWinner()).isEqualTo(PlayGameData.Color.WHITE);
+    assertThat(controller.getScore().getWonBy()).isEqualTo(komi);
+
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createMove(1, 1));
+
+    assertThat(controller.getScore().getWinner()).isEqualTo(PlayGameData.Color.BLACK);
+    assertThat(controller.getScore().getWonBy()).isEqualTo(size * size - komi);
+    assertThat(controller.getScore().getBlackTerritoryList()).hasSize(size * size - 1);
+
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createMove(1, 1));
+
+    assertThat(controller.getScore().getWinner()).isEqualTo(PlayGameData.Color.WHITE);
+    assertThat(controller.getScore().getBlackTerritoryList()).isEmpty();
+  }
+
+  @Test
+  public void testSetSuggestedDeadStones() {
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createMove(0, 0));
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createMove(1, 1));
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createPassMove());
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createPassMove());
+    assertThat(controller.getDeadStones()).isEmpty();
+    BitBoard deadStones = BitBoard.forBoardSize(controller.getGameConfiguration().getBoardSize());
+    deadStones.set(controller.getGame().getPos(1, 1));
+
+    assertThat(controller.setSuggestedDeadStones(deadStones)).isTrue();
+
+    assertThat(controller.getDeadStones()).containsOnly(GAME_DATAS.createPosition(1, 1));
+    assertThat(controller.getScore().getWinner()).isEqualTo(PlayGameData.Color.BLACK);
+  }
+
+  @Test
+  public void testSetSuggestedDeadStones_notMarking() {
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createMove(0, 0));
+    BitBoard deadStones = BitBoard.forBoardSize(controller.getGameConfiguration().getBoardSize());
+    deadStones.set(controller.getGame().getPos(0, 0));
+
+    assertThat(controller.setSuggestedDeadStones(deadStones)).isFalse();
+
+    assertThat(controller.getDeadStones()).isEmpty();
+  }
+
+  @Test
+  public void testPlayMoveOrToggleDeadStone_notifiesListener() {
+    final int[] changes = {0};
+    controller.registerListener(new GoGameController.Listener() {
+      @Override
+      public void onGameChanged(GoGameController gameController) {
+        changes[0]++;
+      }
+    });
+
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createMove(0, 0));
+    controller.playMoveOrToggleDeadStone(GAME_DATAS.createMove(0, 0));
+    controller.undo();
+
+    assertThat(changes[0]).isEqualTo(2);
+  }
+
   @Test
   public void testToString() {
     assertThat(controller.toString()).isNotNull();
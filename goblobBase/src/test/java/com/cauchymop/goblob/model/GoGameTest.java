@@ -126,6 +126,24 @@ public class GoGameTest {
     assertThat(goGame.isLastMovePass()).isFalse();
   }
 
+  @Test
+  public void testPlay_koRecapture() {
+    GoGame goGame = createKoGame();
+    assertThat(goGame.play(goGame.getPos(1, 1))).isFalse();
+    assertThat(goGame.getCurrentColor()).isEqualTo(Color.WHITE);
+    assertThat(goGame.getColor(2, 1)).isEqualTo(Color.BLACK);
+  }
+
+  @Test
+  public void testPlay_koRecaptureAfterUndo() {
+    GoGame goGame = createKoGame();
+    goGame.undo();
+    goGame.undo();
+    assertThat(goGame.play(goGame.getPos(1, 1))).isTrue();
+    assertThat(goGame.play(goGame.getPos(2, 1))).isTrue();
+    assertThat(goGame.play(goGame.getPos(1, 1))).isFalse();
+  }
+
   @Test
   public void testPlay_pass() {
     GoGame goGame = new GoGame(9, 0);
@@ -157,4 +175,21 @@ public class GoGameTest {
         ".........\n"
     );
   }
+
+  /**
+   * Returns a game where black just took a ko at (2, 1), which white can't retake at (1, 1).
+   */
+  private GoGame createKoGame() {
+    GoGame goGame = new GoGame(9, 0);
+    goGame.play(goGame.getPos(1, 0));
+    goGame.play(goGame.getPos(2, 0));
+    goGame.play(goGame.getPos(0, 1));
+    goGame.play(goGame.getPos(3, 1));
+    goGame.play(goGame.getPos(1, 2));
+    goGame.play(goGame.getPos(2, 2));
+    goGame.play(goGame.getPos(8, 8));
+    goGame.play(goGame.getPos(1, 1));
+    goGame.play(goGame.getPos(2, 1));  // Takes the ko.
+    return goGame;
+  }
 }
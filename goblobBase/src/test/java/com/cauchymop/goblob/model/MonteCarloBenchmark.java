@@ -0,0 +1,31 @@
+package com.cauchymop.goblob.model;
+
+/**
+ * Measures how the playouts per second of {@link MonteCarlo} scale with the number of threads.
+ * <p>
+ * Usage: {@code MonteCarloBenchmark [boardSize] [iterations] [maxThreadCount]}.
+ */
+public class MonteCarloBenchmark {
+
+  public static void main(String[] args) {
+    int boardSize = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+    int maxThreadCount = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+    // Warm up.
+    MonteCarlo.getBestMove(new GoGame(boardSize, 0), iterations, 1);
+
+    double singleThreadRate = 0;
+    for (int threadCount = 1; threadCount <= maxThreadCount; threadCount *= 2) {
+      long start = System.nanoTime();
+      MonteCarlo.getBestMove(new GoGame(boardSize, 0), iterations, threadCount);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      double rate = iterations / seconds;
+      if (threadCount == 1) {
+        singleThreadRate = rate;
+      }
+      System.out.println(String.format("%2d threads: %8.0f playouts/s, speedup %.2f",
+          threadCount, rate, rate / singleThreadRate));
+    }
+  }
+}
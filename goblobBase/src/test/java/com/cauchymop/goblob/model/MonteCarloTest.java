@@ -10,6 +10,8 @@ import org.junit.Test;
  */
 public class MonteCarloTest {
 
+  private static final SearchConfig CONFIG = SearchConfig.newBuilder().setSeed(0).build();
+
   @Test @Ignore
   public void testGetBestMove_endGame() {
     GoGame game = new GoGame(6, 0);
@@ -23,4 +25,136 @@ public class MonteCarloTest {
     assertThat(MonteCarlo.getBestMove(game, 100)).isEqualTo(33);
   }
 
+  @Test
+  public void testGetBestMove_parallel() {
+    GoGame game = new GoGame(5, 0);
+    int move = MonteCarlo.getBestMove(game, 500, 4);
+    assertThat(move).isGreaterThanOrEqualTo(0).isLessThanOrEqualTo(game.getPassValue());
+    assertThat(game.getMoveCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSearch_seeded() {
+    // A new game each time, as playing and undoing moves changes the order of the empty points.
+    SearchResult first = MonteCarlo.search(new GoGame(5, 0), SearchBudget.ofIterations(300),
+        new CancellationToken(), CONFIG);
+    SearchResult second = MonteCarlo.search(new GoGame(5, 0), SearchBudget.ofIterations(300),
+        new CancellationToken(), CONFIG);
+
+    assertThat(second.getMove()).isEqualTo(first.getMove());
+    assertThat(second.getMoveVisits()).isEqualTo(first.getMoveVisits());
+    assertThat(second.getMoveWinRate()).isEqualTo(first.getMoveWinRate());
+  }
+
+  @Test
+  public void testSearch_iterationBudget() {
+    GoGame game = new GoGame(5, 0);
+    SearchResult result = MonteCarlo.search(game, SearchBudget.ofIterations(200),
+        new CancellationToken(), CONFIG);
+
+    assertThat(result.getIterations()).isLessThanOrEqualTo(200);
+    assertThat(result.getStopReason()).isNotEqualTo(SearchResult.StopReason.CANCELLED);
+    assertThat(result.getMove()).isGreaterThanOrEqualTo(0).isLessThanOrEqualTo(game.getPassValue());
+    assertThat(result.getMoveVisits()).isGreaterThan(0);
+    assertThat(result.getMoveWinRate()).isGreaterThanOrEqualTo(0).isLessThanOrEqualTo(1);
+    assertThat(result.getNodes()).isGreaterThan(1);
+  }
+
+  @Test
+  public void testSearch_timeBudget() {
+    GoGame game = new GoGame(9, 0);
+    SearchResult result = MonteCarlo.search(game, SearchBudget.ofTime(100),
+        new CancellationToken(), CONFIG.toBuilder().setThreadCount(2).build());
+
+    assertThat(result.getStopReason()).isNotEqualTo(SearchResult.StopReason.CANCELLED);
+    assertThat(result.getIterations()).isGreaterThan(0);
+    assertThat(result.getElapsedMillis()).isLessThan(1000);
+  }
+
+  @Test
+  public void testSearch_timeBudgetBoundsArena() {
+    // Without a table, the memory of the search is the one of its arena.
+    SearchConfig config = CONFIG.toBuilder().setTranspositionTableSize(0).build();
+    SearchResult shortSearch = MonteCarlo.search(new GoGame(9, 0), SearchBudget.ofTime(10),
+        new CancellationToken(), config);
+    SearchResult longSearch = MonteCarlo.search(new GoGame(9, 0), SearchBudget.ofTime(50),
+        new CancellationToken(), config);
+
+    assertThat(shortSearch.getStats().getMemoryBytes())
+        .isLessThan(longSearch.getStats().getMemoryBytes());
+    assertThat(longSearch.getStats().getMemoryBytes()).isLessThan(1 << 20);
+  }
+
+  @Test
+  public void testSearch_cancelled() {
+    CancellationToken cancellationToken = new CancellationToken();
+    cancellationToken.cancel();
+    SearchResult result = MonteCarlo.search(new GoGame(9, 0),
+        SearchBudget.ofTime(SearchBudget.NO_TIME_LIMIT), cancellationToken,
+        CONFIG);
+
+    assertThat(result.getStopReason()).isEqualTo(SearchResult.StopReason.CANCELLED);
+    assertThat(result.getIterations()).isEqualTo(0);
+    assertThat(result.getMove()).isEqualTo(GoGame.NO_MOVE);
+  }
+
+  @Test
+  public void testSearch_withoutRave() {
+    GoGame game = new GoGame(5, 0);
+    SearchConfig config = CONFIG.toBuilder().setRaveEquivalence(0).build();
+    SearchResult result = MonteCarlo.search(game, SearchBudget.ofIterations(200),
+        new CancellationToken(), config);
+
+    assertThat(result.getMove()).isGreaterThanOrEqualTo(0).isLessThanOrEqualTo(game.getPassValue());
+    assertThat(result.getIterations()).isGreaterThan(0);
+  }
+
+  @Test
+  public void testSearch_provenWin() {
+    GoGame game = new GoGame(5, 0);
+    game.play(game.getPos(2, 2));
+    game.play(game.getPassValue());
+    // Black is ahead and wins by passing too.
+    SearchResult result = MonteCarlo.search(game, SearchBudget.ofIterations(10000),
+        new CancellationToken(), CONFIG);
+
+    assertThat(result.getStopReason()).isEqualTo(SearchResult.StopReason.RESULT_PROVEN);
+    assertThat(result.getIterations()).isLessThan(10000);
+    assertThat(result.getMove()).isEqualTo(game.getPassValue());
+    assertThat(result.getMoveWinRate()).isEqualTo(1.0);
+  }
+
+  @Test
+  public void testSearch_komi() {
+    GoGame game = new GoGame(5, 0);
+    game.play(game.getPos(2, 2));
+    game.play(game.getPassValue());
+    // The komi is more than the whole board.
+    SearchResult result = MonteCarlo.search(game, SearchBudget.ofIterations(1000),
+        new CancellationToken(), CONFIG.toBuilder().setKomi(25.5f).build());
+
+    assertThat(result.getMove()).isNotEqualTo(game.getPassValue());
+    assertThat(result.getMoveWinRate()).isEqualTo(0.0);
+  }
+
+  @Test
+  public void testSearch_stats() {
+    GoGame game = new GoGame(5, 0);
+    SearchResult result = MonteCarlo.search(game, SearchBudget.ofIterations(300),
+        new CancellationToken(), CONFIG);
+
+    SearchStats stats = result.getStats();
+    assertThat(stats.getIterations()).isEqualTo(result.getIterations());
+    assertThat(stats.getNodes()).isEqualTo(result.getNodes());
+    assertThat(stats.getMaxDepth()).isGreaterThan(1);
+    assertThat(stats.getAverageDepth()).isGreaterThanOrEqualTo(1).isLessThanOrEqualTo(
+        stats.getMaxDepth());
+    assertThat(stats.getMemoryBytes()).isGreaterThan(0);
+    assertThat(stats.getRolloutNanos()).isGreaterThan(0);
+    assertThat(stats.getPrincipalVariation()[0]).isEqualTo(result.getMove());
+    SearchStats.MoveStats bestMove = stats.getMoveStats().get(0);
+    assertThat(bestMove.getMove()).isEqualTo(result.getMove());
+    assertThat(bestMove.getVisits()).isEqualTo(result.getMoveVisits());
+    assertThat(bestMove.getWinRate()).isEqualTo(result.getMoveWinRate());
+  }
 }
@@ -0,0 +1,130 @@
+package com.cauchymop.goblob.model;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link NodeArena}.
+ */
+public class NodeArenaTest {
+
+  @Test
+  public void testNew_onlyRoot() {
+    NodeArena arena = new NodeArena(10);
+    assertThat(arena.size()).isEqualTo(1);
+    assertThat(arena.getFirstChild(NodeArena.ROOT)).isEqualTo(NodeArena.NO_NODE);
+    assertThat(arena.getChildCount(NodeArena.ROOT)).isEqualTo(0);
+  }
+
+  @Test
+  public void testExpand() {
+    NodeArena arena = new NodeArena(10);
+    assertThat(arena.expand(NodeArena.ROOT, new int[]{4, 7, 9}, 3)).isTrue();
+
+    int firstChild = arena.getFirstChild(NodeArena.ROOT);
+    assertThat(arena.getChildCount(NodeArena.ROOT)).isEqualTo(3);
+    assertThat(arena.getMove(firstChild)).isEqualTo(4);
+    assertThat(arena.getMove(firstChild + 2)).isEqualTo(9);
+    assertThat(arena.size()).isEqualTo(4);
+  }
+
+  @Test
+  public void testExpand_alreadyExpanded() {
+    NodeArena arena = new NodeArena(10);
+    arena.expand(NodeArena.ROOT, new int[]{4, 7}, 2);
+    assertThat(arena.expand(NodeArena.ROOT, new int[]{1}, 1)).isFalse();
+    assertThat(arena.getChildCount(NodeArena.ROOT)).isEqualTo(2);
+  }
+
+  @Test
+  public void testExpand_full() {
+    NodeArena arena = new NodeArena(3);
+    assertThat(arena.expand(NodeArena.ROOT, new int[]{4, 7, 9}, 3)).isFalse();
+    assertThat(arena.getFirstChild(NodeArena.ROOT)).isEqualTo(NodeArena.NO_NODE);
+    assertThat(arena.expand(NodeArena.ROOT, new int[]{4, 7}, 2)).isTrue();
+  }
+
+  @Test
+  public void testStats() {
+    NodeArena arena = new NodeArena(10);
+    arena.expand(NodeArena.ROOT, new int[]{4}, 1);
+    int node = arena.getFirstChild(NodeArena.ROOT);
+
+    assertThat(arena.addVirtualLoss(node)).isEqualTo(0);
+    assertThat(arena.getValue(node)).isEqualTo(-1f);
+    arena.addValue(node, 2);
+    assertThat(arena.addVirtualLoss(node)).isEqualTo(1);
+
+    assertThat(arena.getVisits(node)).isEqualTo(2);
+    assertThat(arena.getValue(node)).isEqualTo(0f);
+  }
+
+  @Test
+  public void testClear() {
+    NodeArena arena = new NodeArena(10);
+    arena.expand(NodeArena.ROOT, new int[]{4, 7}, 2);
+    arena.setInvalid(arena.getFirstChild(NodeArena.ROOT));
+    arena.clear();
+    assertThat(arena.size()).isEqualTo(1);
+    assertThat(arena.getFirstChild(NodeArena.ROOT)).isEqualTo(NodeArena.NO_NODE);
+
+    arena.expand(NodeArena.ROOT, new int[]{4, 7}, 2);
+    assertThat(arena.isInvalid(arena.getFirstChild(NodeArena.ROOT))).isFalse();
+  }
+
+  @Test
+  public void testRaveStats() {
+    NodeArena arena = new NodeArena(10);
+    arena.expand(NodeArena.ROOT, new int[]{4}, 1);
+    int node = arena.getFirstChild(NodeArena.ROOT);
+
+    arena.addRaveResult(node, 1);
+    arena.addRaveResult(node, -1);
+    arena.addRaveResult(node, 1);
+
+    assertThat(arena.getRaveVisits(node)).isEqualTo(3);
+    assertThat(arena.getRaveValue(node)).isEqualTo(1f);
+    assertThat(arena.getVisits(node)).isEqualTo(0);
+  }
+
+  @Test
+  public void testProven() {
+    NodeArena arena = new NodeArena(10);
+    arena.expand(NodeArena.ROOT, new int[]{4, 7}, 2);
+    int win = arena.findChild(NodeArena.ROOT, 4);
+    int loss = arena.findChild(NodeArena.ROOT, 7);
+
+    arena.setProven(win, true);
+    arena.setProven(loss, false);
+    arena.setInvalid(loss);
+
+    assertThat(arena.isProven(NodeArena.ROOT)).isFalse();
+    assertThat(arena.isProvenWin(win)).isTrue();
+    assertThat(arena.isProvenLoss(win)).isFalse();
+    assertThat(arena.isProvenLoss(loss)).isTrue();
+    assertThat(arena.isInvalid(loss)).isTrue();
+    assertThat(arena.isInvalid(win)).isFalse();
+  }
+
+  @Test
+  public void testCopySubtree() {
+    NodeArena source = new NodeArena(10);
+    source.expand(NodeArena.ROOT, new int[]{4, 7}, 2);
+    int node = source.findChild(NodeArena.ROOT, 7);
+    source.addVirtualLoss(node);
+    source.addRaveResult(node, 1);
+    source.expand(node, new int[]{1, 2, 3}, 3);
+    source.expand(source.findChild(node, 2), new int[]{5}, 1);
+
+    NodeArena arena = new NodeArena(10);
+    arena.copySubtree(source, node);
+
+    assertThat(arena.size()).isEqualTo(5);
+    assertThat(arena.getVisits(NodeArena.ROOT)).isEqualTo(1);
+    assertThat(arena.getRaveVisits(NodeArena.ROOT)).isEqualTo(1);
+    assertThat(arena.getChildCount(NodeArena.ROOT)).isEqualTo(3);
+    int child = arena.findChild(NodeArena.ROOT, 2);
+    assertThat(arena.getMove(arena.getFirstChild(child))).isEqualTo(5);
+  }
+}
@@ -0,0 +1,86 @@
+package com.cauchymop.goblob.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link OwnershipEstimator}.
+ */
+public class OwnershipEstimatorTest {
+
+  @Test
+  public void testEstimate() {
+    // Both players live, and the black stone in the white corner is dead.
+    GoGame game = createFinishedGame(
+        ". X . X O . .\n" +
+        "X X X X O . .\n" +
+        ". X . X O O O\n" +
+        "X X X X O . O\n" +
+        ". X . X O O O\n" +
+        "X X X X O X .\n" +
+        ". X . X O . .\n");
+    int moveCount = game.getMoveCount();
+    OwnershipEstimator estimator = new OwnershipEstimator(new Random(0));
+
+    estimator.estimate(game, OwnershipEstimator.DEFAULT_PLAYOUTS);
+
+    assertThat(game.getMoveCount()).isEqualTo(moveCount);
+    assertThat(estimator.getOwnership(game.getPos(0, 0))).isEqualTo(1.0);
+    assertThat(estimator.getOwnership(game.getPos(6, 0))).isEqualTo(-1.0);
+    assertThat(estimator.getOwnership(game.getPos(5, 5))).isLessThan(-0.6);
+    BitBoard deadStones = estimator.getDeadStones();
+    assertThat(deadStones.nextSetBit(0)).isEqualTo(game.getPos(5, 5));
+    assertThat(deadStones.nextSetBit(game.getPos(5, 5) + 1)).isEqualTo(-1);
+  }
+
+  @Test
+  public void testEstimate_contestedStone() {
+    GoGame game = createFinishedGame(
+        ". . . . . . .\n" +
+        ". . . . . . .\n" +
+        ". . . . . . .\n" +
+        ". . . X . . .\n" +
+        ". . . . . . .\n" +
+        ". . . . . . .\n" +
+        ". . . . . . .\n");
+    OwnershipEstimator estimator = new OwnershipEstimator(new Random(0));
+
+    estimator.estimate(game, OwnershipEstimator.DEFAULT_PLAYOUTS);
+
+    assertThat(estimator.getDeadStones().nextSetBit(0)).isEqualTo(-1);
+  }
+
+  /**
+   * Plays the stones of the text board, passing when a player has no stone left, and passes until
+   * the end of the game.
+   */
+  private static GoGame createFinishedGame(String text) {
+    String[] rows = text.split("\n");
+    GoGame game = new GoGame(rows.length, 0);
+    List<Integer> blackMoves = new ArrayList<>();
+    List<Integer> whiteMoves = new ArrayList<>();
+    for (int y = 0; y < rows.length; y++) {
+      String row = rows[y].replace(" ", "");
+      for (int x = 0; x < row.length(); x++) {
+        if (row.charAt(x) == 'X') {
+          blackMoves.add(game.getPos(x, y));
+        } else if (row.charAt(x) == 'O') {
+          whiteMoves.add(game.getPos(x, y));
+        }
+      }
+    }
+    for (int i = 0; i < Math.max(blackMoves.size(), whiteMoves.size()); i++) {
+      game.play(i < blackMoves.size() ? blackMoves.get(i) : game.getPassValue());
+      game.play(i < whiteMoves.size() ? whiteMoves.get(i) : game.getPassValue());
+    }
+    while (!game.isGameEnd()) {
+      game.play(game.getPassValue());
+    }
+    return game;
+  }
+}
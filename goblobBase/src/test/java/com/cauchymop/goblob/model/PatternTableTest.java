@@ -0,0 +1,59 @@
+package com.cauchymop.goblob.model;
+
+import org.junit.Test;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Color;
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link PatternTable}.
+ */
+public class PatternTableTest {
+
+  @Test
+  public void testGetWeight_emptyNeighborhood() {
+    GoBoard board = new GoBoard(9);
+    assertThat(PatternTable.getWeight(board.getPatternCode(board.getPos(4, 4))))
+        .isEqualTo(PatternTable.DEFAULT_WEIGHT);
+  }
+
+  @Test
+  public void testGetWeight_hane() {
+    GoBoard board = new GoBoard(9);
+    TextBoard.fillBoard(board,
+        ". . . . . . . . .\n" +
+        ". . . . . . . . .\n" +
+        ". . . ● ○ ● . . .\n" +
+        ". . . . . . . . .\n" +
+        ". . . . . . . . .\n" +
+        ". . . . . . . . .\n" +
+        ". . . . . . . . .\n" +
+        ". . . . . . . . .\n" +
+        ". . . . . . . . .\n");
+    assertThat(PatternTable.getWeight(board.getPatternCode(board.getPos(4, 3))))
+        .isEqualTo(PatternTable.PATTERN_WEIGHT);
+  }
+
+  @Test
+  public void testGetWeight_symmetries() {
+    // The same hane, rotated, with the colors swapped.
+    GoBoard board = new GoBoard(9);
+    board.play(Color.WHITE, board.getPos(2, 3));
+    board.play(Color.BLACK, board.getPos(2, 4));
+    board.play(Color.WHITE, board.getPos(2, 5));
+
+    assertThat(PatternTable.getWeight(board.getPatternCode(board.getPos(3, 4))))
+        .isEqualTo(PatternTable.PATTERN_WEIGHT);
+  }
+
+  @Test
+  public void testGetWeight_edge() {
+    // Sagari: blocks along the first line.
+    GoBoard board = new GoBoard(9);
+    board.play(Color.BLACK, board.getPos(3, 7));
+    board.play(Color.WHITE, board.getPos(4, 7));
+
+    assertThat(PatternTable.getWeight(board.getPatternCode(board.getPos(3, 8))))
+        .isEqualTo(PatternTable.PATTERN_WEIGHT);
+  }
+}
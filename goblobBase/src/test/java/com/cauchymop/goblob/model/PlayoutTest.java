@@ -0,0 +1,164 @@
+package com.cauchymop.goblob.model;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link Playout}.
+ */
+public class PlayoutTest {
+
+  private static final int WARM_UP_PLAYOUTS = 2000;
+  private static final int MEASURED_PLAYOUTS = 200;
+  private static final SearchConfig FULL_PLAYOUTS = SearchConfig.newBuilder()
+      .setMercyThreshold(0)
+      .setUnconditionalLifeCheck(false)
+      .build();
+  private static final SearchConfig TACTICS =
+      SearchConfig.newBuilder().setTacticalPlayouts(true).build();
+
+  @Test
+  public void testRun_endsGame() {
+    GoGame game = new GoGame(9, 0);
+    int score = new Playout(new Random(0), FULL_PLAYOUTS).run(game);
+    assertThat(game.isGameEnd()).isTrue();
+    // The eyes left on the board count in the area score.
+    TerritoryScorer scorer = new TerritoryScorer(9);
+    scorer.score(game.getBoard());
+    assertThat(score).isEqualTo(scorer.getAreaScore());
+    assertThat(score).isNotEqualTo(game.getBoard().getScore());
+  }
+
+  @Test
+  public void testRun_withPatterns_endsGame() {
+    GoGame game = new GoGame(9, 0);
+    new Playout(new Random(0), FULL_PLAYOUTS.toBuilder().setPatternPlayouts(true).build())
+        .run(game);
+    assertThat(game.isGameEnd()).isTrue();
+  }
+
+  @Test
+  public void testRun_withPatterns_favorsPatternAnswers() {
+    GoGame game = new GoGame(9, 0);
+    game.play(game.getPos(4, 4));
+    game.play(game.getPos(5, 3));
+    int moveCount = game.getMoveCount();
+    Playout playout =
+        new Playout(new Random(0), FULL_PLAYOUTS.toBuilder().setPatternPlayouts(true).build());
+    int answers = 0;
+    int playouts = 2000;
+    for (int i = 0; i < playouts; i++) {
+      playout.run(game);
+      int move = game.getMove(moveCount);
+      // The two diagonal attachments, drawn 20 times in 97 instead of 2 in 79 uniformly.
+      if (move == game.getPos(5, 4) || move == game.getPos(4, 3)) {
+        answers++;
+      }
+      while (game.getMoveCount() > moveCount) {
+        game.undo();
+      }
+    }
+    assertThat(answers).isGreaterThan(playouts * 15 / 100).isLessThan(playouts * 26 / 100);
+  }
+
+  @Test
+  public void testRun_mercyRule() {
+    GoGame game = new GoGame(9, 0);
+    // 25 black stones for 81 positions passes the default threshold of 30%.
+    for (int x = 0; x < 5; x++) {
+      for (int y = 0; y < 5; y++) {
+        game.play(game.getPos(x, y));
+        game.play(game.getPassValue());
+      }
+    }
+    int moveCount = game.getMoveCount();
+
+    int score = new Playout(new Random(0)).run(game);
+
+    assertThat(score).isEqualTo(25);
+    assertThat(game.getMoveCount()).isEqualTo(moveCount);
+  }
+
+  @Test
+  public void testRun_settledPosition() {
+    GoGame game = new GoGame(5, 0);
+    TextBoard.fillBoard(game.getBoard(),
+        ". X O O .\n" +
+        "X X O O O\n" +
+        ". X O O .\n" +
+        "X X O O O\n" +
+        ". X O O .\n");
+
+    int score = new Playout(new Random(0)).run(game);
+
+    assertThat(score).isEqualTo(-5);
+    assertThat(game.getMoveCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRun_withTactics_capturesLastMove() {
+    GoGame game = new GoGame(5, 0);
+    game.play(game.getPos(1, 0));
+    game.play(game.getPos(4, 4));
+    game.play(game.getPos(2, 2));
+    // White plays into atari in the corner.
+    game.play(game.getPos(0, 0));
+    int moveCount = game.getMoveCount();
+
+    new Playout(new Random(0), TACTICS).run(game);
+
+    assertThat(game.getMove(moveCount)).isEqualTo(game.getPos(0, 1));
+  }
+
+  @Test
+  public void testRun_withTactics_escapesAtari() {
+    GoGame game = new GoGame(5, 0);
+    game.play(game.getPos(2, 2));
+    game.play(game.getPos(1, 2));
+    game.play(game.getPos(4, 4));
+    game.play(game.getPos(3, 2));
+    game.play(game.getPassValue());
+    // White puts the black stone in atari.
+    game.play(game.getPos(2, 1));
+    int moveCount = game.getMoveCount();
+
+    new Playout(new Random(0), TACTICS).run(game);
+
+    assertThat(game.getMove(moveCount)).isEqualTo(game.getPos(2, 3));
+  }
+
+  @Test
+  public void testRun_noAllocationOnceWarm() {
+    com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    GoGame game = new GoGame(9, 0);
+    Playout playout = new Playout(new Random(0));
+    for (int i = 0; i < WARM_UP_PLAYOUTS; i++) {
+      runAndRestore(playout, game);
+    }
+
+    // Measures the cost of the measurement itself.
+    long start = threadBean.getThreadAllocatedBytes(threadId);
+    long overhead = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+    start = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < MEASURED_PLAYOUTS; i++) {
+      runAndRestore(playout, game);
+    }
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+
+    assertThat(allocated / MEASURED_PLAYOUTS).isEqualTo(0);
+  }
+
+  private void runAndRestore(Playout playout, GoGame game) {
+    playout.run(game);
+    while (game.getMoveCount() > 0) {
+      game.undo();
+    }
+  }
+}
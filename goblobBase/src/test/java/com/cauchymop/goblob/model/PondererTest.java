@@ -0,0 +1,118 @@
+package com.cauchymop.goblob.model;
+
+import com.cauchymop.goblob.proto.PlayGameData.GameData;
+import com.cauchymop.goblob.proto.PlayGameData.GameData.Phase;
+import com.cauchymop.goblob.proto.PlayGameData.GameType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Color;
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link Ponderer}.
+ */
+public class PondererTest {
+
+  private static final SearchConfig CONFIG = SearchConfig.newBuilder().setSeed(0).build();
+
+  private SearchSession session;
+  private Ponderer ponderer;
+
+  @Before
+  public void setUp() {
+    session = new SearchSession(100000, CONFIG);
+    ponderer = new Ponderer(session, Color.WHITE, SearchBudget.ofIterations(300));
+  }
+
+  @After
+  public void tearDown() {
+    ponderer.shutdown();
+  }
+
+  @Test
+  public void testSearch_reusesPonderingOfAnticipatedMove() throws InterruptedException {
+    GoGame game = new GoGame(5, 0);
+    ponderer.ponder(game);
+    assertThat(ponderer.isPondering()).isTrue();
+    Thread.sleep(100);
+    SearchResult pondering = ponderer.stopPondering();
+    assertThat(ponderer.isPondering()).isFalse();
+    assertThat(pondering.getIterations()).isGreaterThan(0);
+
+    game.play(pondering.getMove());
+    ponderer.search(game, SearchBudget.ofIterations(0), new CancellationToken());
+
+    assertThat(session.getNodeCount()).isGreaterThan(1);
+  }
+
+  @Test
+  public void testStopPondering_notPondering() {
+    assertThat(ponderer.stopPondering()).isNull();
+  }
+
+  @Test
+  public void testPonder_sessionHeldByAnotherSearch() {
+    assertThat(session.tryAcquire()).isTrue();
+
+    ponderer.ponder(new GoGame(5, 0));
+
+    assertThat(ponderer.stopPondering()).isNull();
+    session.release();
+  }
+
+  @Test
+  public void testOnGameChanged_doesNotWaitForPondering() throws InterruptedException {
+    GameDatas gameDatas = new GameDatas(null);
+    GameData gameData = gameDatas.createNewGameData("game", GameType.LOCAL,
+        gameDatas.createGamePlayer("black", "Black"), gameDatas.createGamePlayer("white", "White"))
+        .toBuilder().setPhase(Phase.IN_GAME).build();
+    GoGameController controller = new GoGameController(gameDatas, gameData);
+    ponderer.shutdown();
+    ponderer = new Ponderer(session, Color.BLACK, SearchBudget.ofTime(60000));
+    controller.playMoveOrToggleDeadStone(gameDatas.createMove(2, 2));
+    ponderer.onGameChanged(controller);
+    assertThat(ponderer.isPondering()).isTrue();
+    controller.playMoveOrToggleDeadStone(gameDatas.createMove(3, 3));
+    long start = System.currentTimeMillis();
+
+    ponderer.onGameChanged(controller);
+
+    assertThat(ponderer.isPondering()).isFalse();
+    assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+    ponderer.search(controller.getGame(), SearchBudget.ofIterations(0), new CancellationToken());
+  }
+
+  @Test
+  public void testPonder_releasesSession() {
+    ponderer.ponder(new GoGame(5, 0));
+    ponderer.stopPondering();
+
+    assertThat(session.tryAcquire()).isTrue();
+  }
+
+  @Test
+  public void testShutdown_doesNotWaitForPondering() {
+    ponderer.shutdown();
+    ponderer = new Ponderer(session, Color.WHITE, SearchBudget.ofTime(60000));
+    ponderer.ponder(new GoGame(9, 0));
+    long start = System.currentTimeMillis();
+
+    ponderer.shutdown();
+
+    assertThat(ponderer.isPondering()).isFalse();
+    assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+  }
+
+  @Test
+  public void testPonder_leavesGameUnchanged() throws InterruptedException {
+    GoGame game = new GoGame(5, 0);
+    ponderer.ponder(game);
+    Thread.sleep(50);
+    ponderer.stopPondering();
+
+    assertThat(game.getMoveCount()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,86 @@
+package com.cauchymop.goblob.model;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link SearchSession}.
+ */
+public class SearchSessionTest {
+
+  private static final SearchConfig CONFIG = SearchConfig.newBuilder().setSeed(0).build();
+  private static final SearchBudget NO_ITERATION = SearchBudget.ofIterations(0);
+
+  @Test
+  public void testSearch_reusesSubtree() {
+    SearchSession session = new SearchSession(100000, CONFIG);
+    GoGame game = new GoGame(5, 0);
+    SearchResult result = session.search(game, SearchBudget.ofIterations(500),
+        new CancellationToken());
+    int nodeCount = session.getNodeCount();
+
+    game.play(result.getMove());
+    session.search(game, NO_ITERATION, new CancellationToken());
+
+    assertThat(session.getNodeCount()).isGreaterThan(1).isLessThan(nodeCount);
+  }
+
+  @Test
+  public void testSearch_otherGame() {
+    SearchSession session = new SearchSession(100000, CONFIG);
+    session.search(new GoGame(5, 0), SearchBudget.ofIterations(100), new CancellationToken());
+
+    GoGame otherGame = new GoGame(5, 0);
+    otherGame.play(otherGame.getPos(1, 1));
+    otherGame.play(otherGame.getPos(2, 2));
+    GoGame game = new GoGame(5, 0);
+    game.play(game.getPos(3, 3));
+    session.search(game, SearchBudget.ofIterations(100), new CancellationToken());
+    session.search(otherGame, NO_ITERATION, new CancellationToken());
+
+    assertThat(session.getNodeCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testReset() {
+    SearchSession session = new SearchSession(100000, CONFIG);
+    GoGame game = new GoGame(5, 0);
+    session.search(game, SearchBudget.ofIterations(100), new CancellationToken());
+    session.reset();
+    session.search(game, NO_ITERATION, new CancellationToken());
+
+    assertThat(session.getNodeCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSearch_reusesSearcherThreads() {
+    final ThreadFactory lowPriority =
+        new ThreadFactoryBuilder().setDaemon(true).setPriority(Thread.MIN_PRIORITY).build();
+    final List<Thread> threads = new CopyOnWriteArrayList<>();
+    SearchSession session = new SearchSession(100000, CONFIG.toBuilder().setThreadCount(2).build(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = lowPriority.newThread(runnable);
+            threads.add(thread);
+            return thread;
+          }
+        });
+    GoGame game = new GoGame(5, 0);
+    session.search(game, SearchBudget.ofIterations(100), new CancellationToken());
+    game.play(game.getPos(2, 2));
+    session.search(game, SearchBudget.ofIterations(100), new CancellationToken());
+
+    assertThat(threads).hasSize(2);
+    for (Thread thread : threads) {
+      assertThat(thread.getPriority()).isEqualTo(Thread.MIN_PRIORITY);
+    }
+  }
+}
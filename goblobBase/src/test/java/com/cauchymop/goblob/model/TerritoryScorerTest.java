@@ -0,0 +1,138 @@
+package com.cauchymop.goblob.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.cauchymop.goblob.proto.PlayGameData.Color;
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link TerritoryScorer}.
+ */
+public class TerritoryScorerTest {
+
+  @Test
+  public void testScore_emptyBoard() {
+    TerritoryScorer scorer = new TerritoryScorer(5);
+    scorer.score(new GoBoard(5), BitBoard.forBoardSize(5));
+
+    assertThat(scorer.getBlackTerritory()).isEqualTo(0);
+    assertThat(scorer.getWhiteTerritory()).isEqualTo(0);
+    assertThat(scorer.getTerritoryColor(0)).isNull();
+  }
+
+  @Test
+  public void testScore() {
+    GoBoard board = new GoBoard(5);
+    TextBoard.fillBoard(board,
+        ". . X O .\n" +
+        ". O X O .\n" +
+        ". . X O .\n" +
+        ". . X O .\n" +
+        ". . X O .\n");
+    TerritoryScorer scorer = new TerritoryScorer(5);
+    scorer.score(board, BitBoard.forBoardSize(5));
+
+    // The white stone makes the left region neutral.
+    assertThat(scorer.getBlackTerritory()).isEqualTo(0);
+    assertThat(scorer.getWhiteTerritory()).isEqualTo(5);
+    assertThat(scorer.getBlackStones()).isEqualTo(5);
+    assertThat(scorer.getWhiteStones()).isEqualTo(6);
+    assertThat(scorer.getTerritoryColor(board.getPos(0, 0))).isNull();
+    assertThat(scorer.getTerritoryColor(board.getPos(4, 4))).isEqualTo(Color.WHITE);
+    assertThat(scorer.getTerritoryColor(board.getPos(2, 2))).isNull();
+    assertThat(scorer.getAreaScore()).isEqualTo(5 - 6 - 5);
+  }
+
+  @Test
+  public void testScore_deadStones() {
+    GoBoard board = new GoBoard(5);
+    TextBoard.fillBoard(board,
+        ". . X O .\n" +
+        ". O X O .\n" +
+        ". . X O .\n" +
+        ". . X O .\n" +
+        ". . X O .\n");
+    BitBoard deadStones = BitBoard.forBoardSize(5);
+    deadStones.set(board.getPos(1, 1));
+    TerritoryScorer scorer = new TerritoryScorer(5);
+    scorer.score(board, deadStones);
+
+    assertThat(scorer.getBlackTerritory()).isEqualTo(10);
+    assertThat(scorer.getWhiteStones()).isEqualTo(5);
+    assertThat(scorer.getTerritoryColor(board.getPos(1, 1))).isEqualTo(Color.BLACK);
+  }
+
+  @Test
+  public void testScore_reused() {
+    GoBoard board = new GoBoard(5);
+    TerritoryScorer scorer = new TerritoryScorer(5);
+    board.play(Color.BLACK, 0);
+    scorer.score(board, BitBoard.forBoardSize(5));
+    assertThat(scorer.getBlackTerritory()).isEqualTo(24);
+
+    board.play(Color.WHITE, 24);
+    scorer.score(board, BitBoard.forBoardSize(5));
+
+    assertThat(scorer.getBlackTerritory()).isEqualTo(0);
+    assertThat(scorer.getTerritoryColor(1)).isNull();
+  }
+
+  @Test
+  public void testSetDeadStone() {
+    GoBoard board = new GoBoard(5);
+    TextBoard.fillBoard(board,
+        ". . X O .\n" +
+        ". O X O .\n" +
+        ". . X O .\n" +
+        ". . X O .\n" +
+        ". . X O .\n");
+    TerritoryScorer scorer = new TerritoryScorer(5);
+    scorer.score(board, BitBoard.forBoardSize(5));
+
+    scorer.setDeadStone(board.getPos(1, 1), true);
+    assertThat(scorer.getBlackTerritory()).isEqualTo(10);
+    assertThat(scorer.getWhiteStones()).isEqualTo(5);
+
+    scorer.setDeadStone(board.getPos(1, 1), false);
+    assertThat(scorer.getBlackTerritory()).isEqualTo(0);
+    assertThat(scorer.getWhiteStones()).isEqualTo(6);
+    assertThat(scorer.getTerritoryColor(board.getPos(0, 0))).isNull();
+  }
+
+  @Test
+  public void testSetDeadStone_sameAsScore() {
+    GoGame game = new GoGame(9, 0);
+    SearchConfig config = SearchConfig.newBuilder()
+        .setMercyThreshold(0)
+        .setUnconditionalLifeCheck(false)
+        .build();
+    new Playout(new Random(0), config).run(game);
+    GoBoard board = game.getBoard();
+    BitBoard deadStones = BitBoard.forBoardSize(9);
+    TerritoryScorer scorer = new TerritoryScorer(9);
+    scorer.score(board, deadStones);
+    TerritoryScorer expected = new TerritoryScorer(9);
+    Random random = new Random(0);
+
+    for (int i = 0; i < 200; i++) {
+      int pos = random.nextInt(81);
+      if (board.getColor(pos) == null) {
+        continue;
+      }
+      boolean dead = !deadStones.get(pos);
+      deadStones.set(pos, dead);
+      scorer.setDeadStone(pos, dead);
+      expected.score(board, deadStones);
+
+      assertThat(scorer.getBlackTerritory()).isEqualTo(expected.getBlackTerritory());
+      assertThat(scorer.getWhiteTerritory()).isEqualTo(expected.getWhiteTerritory());
+      assertThat(scorer.getBlackStones()).isEqualTo(expected.getBlackStones());
+      assertThat(scorer.getWhiteStones()).isEqualTo(expected.getWhiteStones());
+      for (int p = 0; p < 81; p++) {
+        assertThat(scorer.getTerritoryColor(p)).isEqualTo(expected.getTerritoryColor(p));
+      }
+    }
+  }
+}
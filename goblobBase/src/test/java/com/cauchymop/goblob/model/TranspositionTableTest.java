@@ -0,0 +1,103 @@
+package com.cauchymop.goblob.model;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link TranspositionTable}.
+ */
+public class TranspositionTableTest {
+
+  @Test
+  public void testAddResult() {
+    TranspositionTable table = new TranspositionTable(64);
+    table.addResult(42, 1);
+    table.addResult(42, -1);
+    table.addResult(42, 1);
+
+    int entry = table.find(42);
+    assertThat(table.getVisits(entry)).isEqualTo(3);
+    assertThat(table.getValue(entry)).isEqualTo(1f);
+    assertThat(table.find(43)).isEqualTo(TranspositionTable.NO_ENTRY);
+  }
+
+  @Test
+  public void testAddResult_replacesLeastVisited() {
+    TranspositionTable table = new TranspositionTable(4);
+    // A single bucket of 4 entries.
+    for (long key = 1; key <= 4; key++) {
+      for (int i = 0; i < key; i++) {
+        table.addResult(key, 1);
+      }
+    }
+    table.addResult(5, 1);
+
+    assertThat(table.find(1)).isEqualTo(TranspositionTable.NO_ENTRY);
+    assertThat(table.find(2)).isNotEqualTo(TranspositionTable.NO_ENTRY);
+    assertThat(table.getVisits(table.find(5))).isEqualTo(1);
+  }
+
+  @Test
+  public void testGetKey_sideToMove() {
+    GoGame game = new GoGame(9, 0);
+    long blackToPlay = TranspositionTable.getKey(game);
+    game.play(game.getPassValue());
+    long whiteToPlay = TranspositionTable.getKey(game);
+    game.play(game.getPassValue());
+
+    assertThat(whiteToPlay).isNotEqualTo(blackToPlay);
+    // The end of the game is not the empty board with black to play either.
+    assertThat(TranspositionTable.getKey(game)).isNotEqualTo(blackToPlay);
+  }
+
+  @Test
+  public void testGetKey_passes() {
+    // The same board with white to play, after no pass, one pass and two passes.
+    GoGame noPass = new GoGame(9, 0);
+    noPass.play(noPass.getPos(2, 2));
+    noPass.play(noPass.getPos(6, 6));
+    noPass.play(noPass.getPos(2, 6));
+    GoGame onePass = new GoGame(9, 0);
+    onePass.play(onePass.getPos(2, 2));
+    onePass.play(onePass.getPassValue());
+    onePass.play(onePass.getPos(2, 6));
+    onePass.play(onePass.getPos(6, 6));
+    onePass.play(onePass.getPassValue());
+    GoGame twoPasses = noPass.copy();
+    twoPasses.play(twoPasses.getPassValue());
+    twoPasses.play(twoPasses.getPassValue());
+
+    assertThat(TranspositionTable.getKey(onePass)).isNotEqualTo(TranspositionTable.getKey(noPass));
+    assertThat(TranspositionTable.getKey(twoPasses))
+        .isNotEqualTo(TranspositionTable.getKey(noPass))
+        .isNotEqualTo(TranspositionTable.getKey(onePass));
+  }
+
+  @Test
+  public void testGetKey_transposition() {
+    GoGame game1 = new GoGame(9, 0);
+    game1.play(game1.getPos(2, 2));
+    game1.play(game1.getPos(6, 6));
+    game1.play(game1.getPos(2, 6));
+    GoGame game2 = new GoGame(9, 0);
+    game2.play(game2.getPos(2, 6));
+    game2.play(game2.getPos(6, 6));
+    game2.play(game2.getPos(2, 2));
+
+    assertThat(TranspositionTable.getKey(game1)).isEqualTo(TranspositionTable.getKey(game2));
+  }
+
+  @Test
+  public void testAge() {
+    TranspositionTable table = new TranspositionTable(64);
+    for (int i = 0; i < 4; i++) {
+      table.addResult(42, 1);
+    }
+    table.age();
+
+    int entry = table.find(42);
+    assertThat(table.getVisits(entry)).isEqualTo(2);
+    assertThat(table.getValue(entry)).isEqualTo(2f);
+  }
+}
@@ -0,0 +1,72 @@
+package com.cauchymop.goblob.model;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests for {@link UnconditionalLife}.
+ */
+public class UnconditionalLifeTest {
+
+  @Test
+  public void testIsSettled_emptyBoard() {
+    assertThat(new UnconditionalLife(5).isSettled(new GoBoard(5))).isFalse();
+  }
+
+  @Test
+  public void testIsSettled_twoEyes() {
+    GoBoard board = new GoBoard(5);
+    TextBoard.fillBoard(board,
+        ". X O O .\n" +
+        "X X O O O\n" +
+        ". X O O .\n" +
+        "X X O O O\n" +
+        ". X O O .\n");
+    UnconditionalLife unconditionalLife = new UnconditionalLife(5);
+
+    assertThat(unconditionalLife.isSettled(board)).isTrue();
+    // Black: 7 stones and 3 eyes, white: 12 stones and 3 eyes.
+    assertThat(unconditionalLife.getAreaScore()).isEqualTo(-5);
+  }
+
+  @Test
+  public void testIsSettled_oneEye() {
+    GoBoard board = new GoBoard(5);
+    TextBoard.fillBoard(board,
+        ". X O O .\n" +
+        ". X O O O\n" +
+        ". X O O .\n" +
+        ". X O O O\n" +
+        ". X O O .\n");
+
+    assertThat(new UnconditionalLife(5).isSettled(board)).isFalse();
+  }
+
+  @Test
+  public void testIsSettled_sharedRegion() {
+    GoBoard board = new GoBoard(5);
+    TextBoard.fillBoard(board,
+        ". X . O .\n" +
+        "X X . O O\n" +
+        ". X . O .\n" +
+        "X X . O O\n" +
+        ". X . O .\n");
+
+    assertThat(new UnconditionalLife(5).isSettled(board)).isFalse();
+  }
+
+  @Test
+  public void testIsSettled_deadStoneInEye() {
+    GoBoard board = new GoBoard(5);
+    TextBoard.fillBoard(board,
+        "O X O O .\n" +
+        ". X O O O\n" +
+        "X X O O .\n" +
+        ". X O O O\n" +
+        ". X O O .\n");
+
+    // Black is alive, but the dead stone has to be removed before the position is scored.
+    assertThat(new UnconditionalLife(5).isSettled(board)).isFalse();
+  }
+}